@@ -24,24 +24,55 @@
 package me.hypherionmc.curseupload;
 
 import me.hypherionmc.curseupload.constants.GameType;
+import me.hypherionmc.curseupload.constants.UploadPhase;
+import me.hypherionmc.curseupload.errors.CurseUploadException;
+import me.hypherionmc.curseupload.listeners.UploadListener;
 import me.hypherionmc.curseupload.requests.CurseArtifact;
 import me.hypherionmc.curseupload.requests.GameVersions;
+import me.hypherionmc.curseupload.requests.UploadPlan;
+import me.hypherionmc.curseupload.requests.UploadResult;
+import me.hypherionmc.curseupload.scheduler.BatchReport;
+import me.hypherionmc.curseupload.scheduler.BatchUpload;
+import me.hypherionmc.curseupload.util.BandwidthLimiter;
+import me.hypherionmc.curseupload.util.HTTPUtils;
+import me.hypherionmc.curseupload.util.RetryPolicy;
+import me.hypherionmc.curseupload.util.UploadJournal;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.helpers.FormattingTuple;
 import org.slf4j.helpers.MessageFormatter;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
  * @author HypherionSA
  * Main CurseUpload4J Interface
  */
-public class CurseUploadApi {
+public class CurseUploadApi implements Closeable {
 
-    // A static reference to an instance of this class. Used internally
+    /**
+     * The most recently created client.
+     * @deprecated Not used internally anymore. Keep a reference to your own client instead, especially when using more than one
+     */
+    @Deprecated
     public static CurseUploadApi INSTANCE;
 
     // Either logger or logConsumer must be non-null
@@ -51,13 +82,38 @@ public class CurseUploadApi {
     // Upload API Token. Required
     private final String apiKey;
 
+    // Pooled HTTP client, shared by all uploads and version requests made through this client
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
     // Reference to the GameVersions API request
     private final GameVersions gameVersions;
 
     // Test the API without actually uploading anything
-    private boolean debug = false;
+    private volatile boolean debug = false;
+
+    private volatile GameType gameType = GameType.MINECRAFT;
+
+    // Executor used for asynchronous uploads. Falls back to defaultExecutor, which is created on first use
+    private @Nullable Executor executor;
+    private @Nullable ExecutorService defaultExecutor;
+
+    // Decides if failed uploads are attempted again
+    private volatile RetryPolicy retryPolicy = RetryPolicy.defaults();
+
+    // Record of files that were already uploaded. Optional
+    private volatile @Nullable UploadJournal journal;
+
+    // Listeners notified about the progress of every upload made by this client
+    private final List<UploadListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long progressInterval = 250;
 
-    private GameType gameType = GameType.MINECRAFT;
+    // How many additional files of a single artifact are uploaded at the same time
+    private volatile int childParallelism = 4;
+
+    // Limits the upload speed of this client. Unlimited by default
+    private final BandwidthLimiter ownBandwidthLimiter = new BandwidthLimiter(0);
+    private volatile BandwidthLimiter bandwidthLimiter = ownBandwidthLimiter;
 
     /**
      * Create a new API Client
@@ -89,10 +145,23 @@ public class CurseUploadApi {
         this.apiKey = apiKey;
         this.logger = logger;
         this.logConsumer = logConsumer;
-        this.gameVersions = new GameVersions();
+        this.connectionManager = HTTPUtils.createConnectionManager();
+        this.httpClient = HTTPUtils.createClient(this.connectionManager);
+        this.gameVersions = new GameVersions(this);
         INSTANCE = this;
 
-        this.gameVersions.refresh();
+        // Load the versions in the background, so creating a client does not wait for the network
+        prewarm();
+    }
+
+    /**
+     * Start loading the game versions of the {@link #setGameType(GameType) current game} in the background.
+     * This is done when the client is created, so it only needs to be called again after switching games.
+     * Uploads wait for the versions by themselves, so waiting on the returned future is optional
+     * @return A future that completes once the versions can be used, or exceptionally if they could not be loaded
+     */
+    public CompletableFuture<Void> prewarm() {
+        return gameVersions.prewarm(gameType);
     }
 
     /**
@@ -104,7 +173,8 @@ public class CurseUploadApi {
     }
 
     /**
-     * Set the {@link GameType} the project is for
+     * Set the {@link GameType} the project is for. Versions are cached per game, so switching does not discard the
+     * versions of the previous game. Use {@link CurseArtifact#gameType(GameType)} to upload files for different games at the same time
      * @param type The game the project belongs to
      */
     public void setGameType(GameType type) {
@@ -127,20 +197,311 @@ public class CurseUploadApi {
         return apiKey;
     }
 
+    /**
+     * INTERNAL. The pooled HTTP client used for all requests made by this client
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Change the size of the connection pool
+     * @param maxTotal The maximum number of open connections
+     * @param maxPerRoute The maximum number of open connections to a single host
+     */
+    public void setMaxConnections(int maxTotal, int maxPerRoute) {
+        if (maxTotal < 1 || maxPerRoute < 1) {
+            throw new IllegalArgumentException("Connection limits must be at least 1");
+        }
+
+        this.connectionManager.setMaxTotal(maxTotal);
+        this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+    }
+
+    /**
+     * Get a snapshot of the connection pool. Leased connections are in use, available connections
+     * are idle and kept alive, and pending is the number of requests waiting for a connection
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Set the {@link Executor} used to run {@link #uploadAsync(CurseArtifact) asynchronous uploads}.
+     * When not set, a shared pool of daemon threads owned by this client is used
+     * @param executor The executor to run uploads on, or null to use the default
+     */
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * INTERNAL. The executor background work of this client is run on
+     */
+    public synchronized Executor getExecutor() {
+        if (executor != null) return executor;
+
+        if (defaultExecutor == null) {
+            final AtomicInteger threadId = new AtomicInteger();
+            defaultExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "CurseUpload4J-" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return defaultExecutor;
+    }
+
+    /**
+     * Keep a record of uploaded files, so files that were already uploaded are skipped when a release is run again.
+     * See {@link UploadJournal}
+     * @param journal The journal to use, or null to always upload every file
+     */
+    public void setJournal(@Nullable UploadJournal journal) {
+        this.journal = journal;
+    }
+
+    public @Nullable UploadJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Get notified about the progress of every upload made by this client
+     */
+    public void addListener(UploadListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(UploadListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    public List<UploadListener> getListeners() {
+        return listeners;
+    }
+
+    /**
+     * Set the minimum time between two {@link UploadListener#onProgress progress updates} of the same upload
+     * @param millis The interval in milliseconds
+     */
+    public void setProgressInterval(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Progress interval cannot be negative");
+        }
+
+        this.progressInterval = millis;
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * Set the {@link RetryPolicy} used when an upload fails because of rate limits, server errors or network problems.
+     * By default, uploads are attempted up to 3 times
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Set how many additional files of an artifact may be uploaded at the same time.
+     * Additional files are only uploaded once the main file has been assigned an ID
+     * @param parallelism The maximum number of concurrent child uploads. 1 uploads them one after another
+     */
+    public void setChildParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Child parallelism must be at least 1");
+        }
+
+        this.childParallelism = parallelism;
+    }
+
+    public int getChildParallelism() {
+        return childParallelism;
+    }
+
+    /**
+     * Limit the combined upload speed of all uploads made by this client. Concurrent uploads share the limit evenly.
+     * Use {@link BandwidthLimiter#global()} to limit all clients together
+     * @param bytesPerSecond The maximum number of bytes sent per second, or 0 for no limit
+     */
+    public void setBandwidthLimit(long bytesPerSecond) {
+        // Never change a limiter that could be shared with other clients. Switch back to the one owned by this client instead
+        this.ownBandwidthLimiter.setRate(bytesPerSecond);
+        this.bandwidthLimiter = ownBandwidthLimiter;
+    }
+
+    /**
+     * Use a {@link BandwidthLimiter} that is shared with other clients, instead of the one owned by this client.
+     * A later call to {@link #setBandwidthLimit(long)} switches back to the limiter owned by this client
+     */
+    public void setBandwidthLimiter(BandwidthLimiter limiter) {
+        this.bandwidthLimiter = limiter;
+    }
+
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * INTERNAL. The limiters every upload of this client has to pass through. A limiter is only included once,
+     * so using {@link BandwidthLimiter#global()} as the client limiter doesn't halve its rate
+     */
+    public BandwidthLimiter[] getBandwidthLimiters() {
+        final BandwidthLimiter limiter = this.bandwidthLimiter;
+        final BandwidthLimiter global = BandwidthLimiter.global();
+        return limiter == global ? new BandwidthLimiter[] { global } : new BandwidthLimiter[] { limiter, global };
+    }
+
     /**
      * Used to upload a {@link CurseArtifact} and it's children. Use this instead of
      * calling upload on the {@link CurseArtifact}
      */
     public void upload(CurseArtifact artifact) throws FileNotFoundException {
-        artifact.upload();
+        artifact.notifyPhase(this, UploadPhase.VERSION_REFRESH);
+        gameVersions.refresh(artifact.getGameType(this));
+
+        try {
+            artifact.upload(this);
+        } catch (CurseUploadException e) {
+            // Already logged. Children cannot be uploaded without their parent
+            return;
+        }
+
+        // Upload failures are already logged, but a missing file is still reported to the caller
+        for (UploadResult child : uploadChildren(artifact)) {
+            if (child.getError() != null && child.getError().getCause() instanceof FileNotFoundException) {
+                throw (FileNotFoundException) child.getError().getCause();
+            }
+        }
+    }
+
+    /**
+     * Upload a {@link CurseArtifact} and it's children without blocking the calling thread.
+     * Uploads run on the {@link #setExecutor(Executor) configured executor}.
+     * @return A future that completes with the result of the main file and each of its children, or exceptionally with a
+     * {@link CurseUploadException} or {@link me.hypherionmc.curseupload.errors.InvalidCurseVersionException} when the
+     * main file could not be uploaded
+     */
+    public CompletableFuture<UploadResult> uploadAsync(CurseArtifact artifact) {
+        return CompletableFuture.supplyAsync(() -> {
+            artifact.notifyPhase(this, UploadPhase.VERSION_REFRESH);
+            gameVersions.refresh(artifact.getGameType(this));
+            return uploadTree(artifact);
+        }, getExecutor());
+    }
+
+    /**
+     * Upload many {@link CurseArtifact artifacts}, possibly for different projects, using the default
+     * {@link BatchUpload} limits. Use {@link BatchUpload} directly to change them
+     * @return A future that completes with a report for every artifact once all uploads have finished
+     */
+    public CompletableFuture<BatchReport> uploadBatch(Collection<CurseArtifact> artifacts) {
+        return new BatchUpload(this).addAll(artifacts).runAsync();
+    }
 
-        artifact.getChildren().forEach(a -> {
-            try {
-                a.upload();
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException(e);
+    /**
+     * INTERNAL. Upload an artifact and its children on the calling thread, using the game versions that are
+     * already loaded
+     * @throws CurseUploadException If the main file could not be uploaded
+     */
+    public UploadResult uploadTree(CurseArtifact artifact) {
+        final long fileId = uploadFile(artifact);
+        return UploadResult.success(artifact, fileId, uploadChildren(artifact));
+    }
+
+    /**
+     * INTERNAL. Upload a prepared main file and its children on the calling thread. The children are prepared
+     * when they are uploaded
+     * @throws CurseUploadException If the main file could not be uploaded
+     */
+    public UploadResult uploadTree(UploadPlan plan) {
+        final CurseArtifact artifact = plan.getArtifact();
+
+        try {
+            artifact.upload(this, plan);
+        } catch (FileNotFoundException e) {
+            throw new CurseUploadException("Failed to find upload artifact " + artifact.getFile(), e);
+        }
+
+        return UploadResult.success(artifact, artifact.getCurseFileId(), uploadChildren(artifact));
+    }
+
+    /**
+     * Upload all children of an artifact, once the parent has been uploaded.
+     * The calling thread takes part in the upload, so this is safe to call from inside the executor
+     */
+    private List<UploadResult> uploadChildren(CurseArtifact parent) {
+        final List<CurseArtifact> children = parent.getChildren();
+        final UploadResult[] results = new UploadResult[children.size()];
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(children.size());
+
+        final Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < children.size()) {
+                try {
+                    results[index] = uploadChild(children.get(index));
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        final int helpers = Math.min(childParallelism, children.size()) - 1;
+        for (int i = 0; i < helpers; i++) {
+            getExecutor().execute(worker);
+        }
+
+        worker.run();
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CurseUploadException("Interrupted while uploading additional files", e);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private UploadResult uploadChild(CurseArtifact child) {
+        try {
+            return UploadResult.success(child, uploadFile(child), Collections.emptyList());
+        } catch (RuntimeException e) {
+            return UploadResult.failure(child, e);
+        }
+    }
+
+    private long uploadFile(CurseArtifact artifact) {
+        try {
+            artifact.upload(this);
+        } catch (FileNotFoundException e) {
+            throw new CurseUploadException("Failed to find upload artifact " + artifact.getFile(), e);
+        }
+
+        return artifact.getCurseFileId();
+    }
+
+    /**
+     * Close the HTTP client and all pooled connections.
+     * The client cannot be used to upload files after this
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (defaultExecutor != null) {
+                defaultExecutor.shutdown();
             }
-        });
+        }
+
+        httpClient.close();
     }
 
     /**
@@ -0,0 +1,42 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.constants;
+
+/**
+ * @author HypherionSA
+ * The outcome of uploading an artifact and its children
+ */
+public enum UploadStatus {
+    // The main file and all additional files were uploaded
+    SUCCESS,
+
+    // The main file was uploaded, but one or more additional files failed
+    PARTIAL,
+
+    // The main file could not be uploaded
+    FAILED,
+
+    // The upload was never attempted, because something it depends on failed
+    CANCELLED
+}
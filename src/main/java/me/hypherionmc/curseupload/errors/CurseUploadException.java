@@ -0,0 +1,106 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.errors;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * @author HypherionSA
+ * Thrown when an artifact could not be uploaded to CurseForge
+ */
+public class CurseUploadException extends RuntimeException {
+    // HTTP status returned by the API, or -1 if no response was received
+    private final int statusCode;
+    private final int errorCode;
+    private final @Nullable String errorMessage;
+
+    // Delay requested by the server through a Retry-After header, or -1 if none was sent
+    private final long retryAfterMillis;
+
+    // Whether the whole request reached the server, so it may have been accepted even without a response
+    private final boolean requestSent;
+
+    public CurseUploadException(String message) {
+        this(message, null);
+    }
+
+    public CurseUploadException(String message, @Nullable Throwable cause) {
+        this(message, cause, false);
+    }
+
+    public CurseUploadException(String message, @Nullable Throwable cause, boolean requestSent) {
+        super(message, cause);
+        this.statusCode = -1;
+        this.errorCode = -1;
+        this.errorMessage = cause != null ? cause.getMessage() : message;
+        this.retryAfterMillis = -1;
+        this.requestSent = requestSent;
+    }
+
+    public CurseUploadException(int statusCode, int errorCode, @Nullable String errorMessage) {
+        this(statusCode, errorCode, errorMessage, -1);
+    }
+
+    public CurseUploadException(int statusCode, int errorCode, @Nullable String errorMessage, long retryAfterMillis) {
+        super("Failed to Upload artifact to CurseForge. Code: " + errorCode + ", Error: " + errorMessage);
+        this.statusCode = statusCode;
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+        this.retryAfterMillis = retryAfterMillis;
+        this.requestSent = true;
+    }
+
+    /**
+     * Check if the whole request was sent before the upload failed. If it was, CurseForge may have accepted the file,
+     * even when no response was received
+     */
+    public final boolean isRequestSent() {
+        return requestSent;
+    }
+
+    /**
+     * The HTTP status code of the failed request, or -1 if the API never responded
+     */
+    public final int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * The error code returned by CurseForge. Falls back to the HTTP status code when no error body was sent
+     */
+    public final int getErrorCode() {
+        return errorCode;
+    }
+
+    public final @Nullable String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * How long the server asked us to wait before trying again, or -1 if it didn't say
+     */
+    public final long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -23,56 +23,131 @@
  */
 package me.hypherionmc.curseupload.errors;
 
+import me.hypherionmc.curseupload.requests.GameVersionIndex;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.unmodifiableList;
 
 /**
  * @author MattSturgeon
- * Thrown when using Minecraft Versions that are not supported by Curseforge
+ * Thrown when using Minecraft Versions that are not supported by Curseforge.
+ * The message and the list of valid versions are only built when they are requested
  */
 public class InvalidCurseVersionException extends IllegalArgumentException {
     private final List<String> invalidVersions;
-    private final List<String> validVersions;
+
+    // Closest valid version for each invalid one that has one. Found up front, so the index is not kept alive
+    private final Map<String, String> suggestions;
+
+    // Valid versions as given. Sorted already when they came from an index, which shares them instead of copying
+    private final List<String> validSource;
+
+    // Built on first use
+    private volatile List<String> validVersions;
+    private transient volatile String message;
+
+    public static InvalidCurseVersionException of(Collection<String> invalidVersions, GameVersionIndex index) {
+        List<String> invalid = invalidVersions.stream().sorted().collect(Collectors.toList());
+        Map<String, String> suggestions = new HashMap<>();
+        for (String version : invalid) {
+            String suggestion = index.suggest(version);
+            if (suggestion != null) suggestions.put(version, suggestion);
+        }
+
+        InvalidCurseVersionException exception = new InvalidCurseVersionException(invalid, suggestions, index.names());
+        exception.validVersions = index.names();
+        return exception;
+    }
 
     public static InvalidCurseVersionException of(Collection<String> invalidVersions, Collection<String> validVersions) {
         List<String> invalid = invalidVersions.stream().sorted().collect(Collectors.toList());
-        List<String> valid = validVersions.stream().sorted().collect(Collectors.toList());
-        return new InvalidCurseVersionException(invalid, valid);
+        return new InvalidCurseVersionException(invalid, Collections.emptyMap(), new ArrayList<>(validVersions));
+    }
+
+    private InvalidCurseVersionException(List<String> invalidVersions, Map<String, String> suggestions, List<String> validSource) {
+        super((String) null);
+        this.invalidVersions = unmodifiableList(invalidVersions);
+        this.suggestions = suggestions;
+        this.validSource = validSource;
     }
 
-    private static String message(List<String> invalid, List<String> valid) {
+    @Override
+    public String getMessage() {
+        String msg = this.message;
+        if (msg == null) {
+            msg = message();
+            this.message = msg;
+        }
+
+        return msg;
+    }
+
+    private String message() {
         StringBuilder msg = new StringBuilder();
-        switch (invalid.size()) {
+        switch (invalidVersions.size()) {
             case 0: break;
             case 1:
-                String v = invalid.stream().findFirst().orElse(null);
-                msg.append(v).append(" is not a valid game version. ");
+                String v = invalidVersions.get(0);
+                msg.append(v).append(" is not a valid game version");
+                appendSuggestion(msg, v);
+                msg.append(". ");
                 break;
             default:
                 msg.append("Invalid game versions: ");
-                msg.append(String.join(", ", invalid));
+                for (int i = 0; i < invalidVersions.size(); i++) {
+                    if (i > 0) msg.append(", ");
+                    msg.append(invalidVersions.get(i));
+                    appendSuggestion(msg, invalidVersions.get(i));
+                }
                 msg.append(". ");
                 break;
         }
-        msg.append("Valid versions are: ");
-        msg.append(String.join(", ", valid));
+        msg.append("See getValidVersions() for the ");
+        msg.append(validSource.size());
+        msg.append(" valid versions");
         return msg.toString();
     }
 
-    private InvalidCurseVersionException(List<String> invalidVersions, List<String> validVersions) {
-        super(message(invalidVersions, validVersions));
-        this.invalidVersions = unmodifiableList(invalidVersions);
-        this.validVersions = unmodifiableList(validVersions);
+    private void appendSuggestion(StringBuilder msg, String version) {
+        String suggestion = getSuggestion(version);
+        if (suggestion != null) {
+            msg.append(" (did you mean ").append(suggestion).append("?)");
+        }
+    }
+
+    /**
+     * Find the valid version that is closest to an invalid one, for example 1.20.1 for 1.2.01
+     * @param invalidVersion One of the {@link #getInvalidVersions() invalid versions}
+     * @return The closest valid version, or null if none is close enough, or the valid versions are unknown
+     */
+    public @Nullable String getSuggestion(String invalidVersion) {
+        return suggestions.get(invalidVersion);
     }
 
     public final List<String> getInvalidVersions() {
         return invalidVersions;
     }
 
+    /**
+     * All valid versions, in alphabetical order
+     */
     public final List<String> getValidVersions() {
-        return validVersions;
+        List<String> valid = this.validVersions;
+        if (valid == null) {
+            List<String> sorted = new ArrayList<>(validSource);
+            Collections.sort(sorted);
+            valid = unmodifiableList(sorted);
+            this.validVersions = valid;
+        }
+
+        return valid;
     }
 }
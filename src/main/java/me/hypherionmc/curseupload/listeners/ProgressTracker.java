@@ -0,0 +1,73 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.listeners;
+
+import me.hypherionmc.curseupload.requests.CurseArtifact;
+import me.hypherionmc.curseupload.util.MultipartFileEntity;
+
+import java.util.List;
+
+/**
+ * @author HypherionSA
+ * INTERNAL. Forwards the bytes written by an upload to {@link UploadListener listeners}, rate limited to one update per interval
+ */
+public class ProgressTracker implements MultipartFileEntity.ProgressCallback {
+
+    private final CurseArtifact artifact;
+    private final List<UploadListener> listeners;
+    private final long intervalNanos;
+    private final long startTime = System.nanoTime();
+    private long lastTick = startTime;
+    private long totalBytes;
+
+    public ProgressTracker(CurseArtifact artifact, List<UploadListener> listeners, long intervalMillis) {
+        this.artifact = artifact;
+        this.listeners = listeners;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    @Override
+    public void onProgress(long bytesWritten, long totalBytes) {
+        this.totalBytes = totalBytes;
+        final long now = System.nanoTime();
+        if (bytesWritten < totalBytes && now - lastTick < intervalNanos) return;
+
+        lastTick = now;
+        for (UploadListener listener : listeners) {
+            listener.onProgress(artifact, bytesWritten, totalBytes);
+        }
+    }
+
+    /**
+     * Report the upload as finished
+     */
+    public void complete() {
+        final long elapsed = Math.max(1, System.nanoTime() - startTime);
+        final double bytesPerSecond = totalBytes / (elapsed / 1_000_000_000.0);
+
+        for (UploadListener listener : listeners) {
+            listener.onComplete(artifact, totalBytes, elapsed, bytesPerSecond);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.listeners;
+
+import me.hypherionmc.curseupload.constants.UploadPhase;
+import me.hypherionmc.curseupload.requests.CurseArtifact;
+
+/**
+ * @author HypherionSA
+ * Receives progress updates while an artifact is being uploaded.
+ * Callbacks are made on the thread doing the upload, so they should return quickly
+ */
+public interface UploadListener {
+
+    /**
+     * Called when the upload of an artifact moves to the next step
+     */
+    default void onPhase(CurseArtifact artifact, UploadPhase phase) {}
+
+    /**
+     * Called while the file is being sent, at most once per progress interval, and once more when all bytes are written.
+     * Starts again from 0 when a failed upload is retried
+     * @param bytesWritten The number of bytes sent so far
+     * @param totalBytes The size of the complete request body
+     */
+    default void onProgress(CurseArtifact artifact, long bytesWritten, long totalBytes) {}
+
+    /**
+     * Called when an artifact was uploaded successfully
+     * @param totalBytes The size of the request body
+     * @param elapsedNanos How long the successful attempt took to send, including the API response
+     * @param bytesPerSecond The achieved throughput
+     */
+    default void onComplete(CurseArtifact artifact, long totalBytes, long elapsedNanos, double bytesPerSecond) {}
+
+    /**
+     * Called after every attempt to send the file, including attempts that fail and are retried
+     * @param statusCode The HTTP status of the response, or -1 if no response was received
+     * @param responseNanos The time between sending the last byte and receiving the response, or -1 if unknown.
+     * Unlike the total time, this does not depend on the size of the file
+     */
+    default void onResponse(CurseArtifact artifact, int statusCode, long responseNanos) {}
+
+}
@@ -24,30 +24,41 @@
 package me.hypherionmc.curseupload.requests;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import me.hypherionmc.curseupload.CurseUploadApi;
 import me.hypherionmc.curseupload.constants.CurseChangelogType;
 import me.hypherionmc.curseupload.constants.CurseRelationType;
 import me.hypherionmc.curseupload.constants.CurseReleaseType;
+import me.hypherionmc.curseupload.constants.GameType;
+import me.hypherionmc.curseupload.constants.UploadPhase;
+import me.hypherionmc.curseupload.errors.CurseUploadException;
+import me.hypherionmc.curseupload.listeners.ProgressTracker;
+import me.hypherionmc.curseupload.listeners.UploadListener;
 import me.hypherionmc.curseupload.schema.meta.CurseMetaData;
 import me.hypherionmc.curseupload.schema.meta.ProjectRelations;
 import me.hypherionmc.curseupload.schema.responses.ResponseError;
 import me.hypherionmc.curseupload.schema.responses.ResponseSuccess;
 import me.hypherionmc.curseupload.util.HTTPUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
+import me.hypherionmc.curseupload.util.MetaDataCodec;
+import me.hypherionmc.curseupload.util.MultipartFileEntity;
+import me.hypherionmc.curseupload.util.RetryPolicy;
+import me.hypherionmc.curseupload.util.UploadJournal;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author HypherionSA
@@ -59,12 +70,12 @@ public class CurseArtifact {
     private transient final long projectId;
     private transient final CurseArtifact parent;
     private transient final File artifact;
-    private transient long curseFileId;
-    private transient Set<Long> uploadVersions;
+    private transient volatile long curseFileId;
     private transient final List<CurseArtifact> children = new ArrayList<>();
-    private transient Map<String, String> relationships = new HashMap<>();
-    private transient final ProjectRelations uploadRelations = new ProjectRelations();
+    private transient Map<String, CurseRelationType> relationships = new HashMap<>();
     private transient boolean isManualRelease = false;
+    private transient final List<UploadListener> listeners = new CopyOnWriteArrayList<>();
+    private transient @Nullable GameType gameType = null;
 
     // Can be changed
     private String changelog;
@@ -129,6 +140,19 @@ public class CurseArtifact {
         return this;
     }
 
+    /**
+     * Upload this file for a specific {@link GameType}, instead of the one set on the {@link CurseUploadApi}.
+     * This allows files for different games to be uploaded by the same client at the same time
+     */
+    public CurseArtifact gameType(GameType gameType) {
+        if (this.parent != null) {
+            throw new IllegalArgumentException("Sub files are always uploaded for the game of their parent!");
+        }
+
+        this.gameType = gameType;
+        return this;
+    }
+
     /**
      * Add a file that will be uploaded along with the main file
      * @param file The file to be uploaded
@@ -171,6 +195,20 @@ public class CurseArtifact {
         return child;
     }
 
+    /**
+     * Get notified about the progress of this upload. Listeners of a main file also receive
+     * updates for its additional files
+     */
+    public CurseArtifact addListener(UploadListener listener) {
+        this.listeners.add(listener);
+        return this;
+    }
+
+    public CurseArtifact removeListener(UploadListener listener) {
+        this.listeners.remove(listener);
+        return this;
+    }
+
     /**
      * Add an incompatible dependency
      */
@@ -221,7 +259,8 @@ public class CurseArtifact {
     }
 
     /**
-     * Add any additional game versions that the mod supports
+     * Add any additional game versions that the mod supports. Besides version names, this accepts version slugs,
+     * wildcards like {@code 1.20.x} and ranges like {@code 1.20.1-1.20.4}
      */
     public CurseArtifact addGameVersion(String gameVersion) {
         if (this.parent != null) {
@@ -236,20 +275,16 @@ public class CurseArtifact {
      * INTERNAL
      */
     private CurseArtifact addRelation(CurseRelationType relationType, String slug) {
-        final String existingRelation = relationships.get(slug);
-
-        if (existingRelation != null) {
-            this.relationships.remove(slug);
-        }
-
-        this.relationships.put(slug, relationType.toString());
+        // Replaces any existing relation to the same project
+        this.relationships.put(slug, relationType);
         return this;
     }
 
     /**
-     * Create the required MetaData that will be sent to the API
+     * Create the required MetaData that will be sent to the API. The parent file ID is added when the file is uploaded
+     * @param gameVersionIds The resolved game versions of a main file
      */
-    private CurseMetaData writeMetaData() {
+    private CurseMetaData writeMetaData(long[] gameVersionIds) {
         final CurseMetaData metaData = new CurseMetaData();
         metaData.changelog = (changelog == null || changelog.isEmpty()) ? "Coming Soon!" : changelog;
         metaData.changelogType = changelogType;
@@ -261,18 +296,12 @@ public class CurseArtifact {
         metaData.releaseType = releaseType;
         metaData.isMarkedForManualRelease = isManualRelease;
 
-        if (!this.uploadRelations.projects.isEmpty()) {
-            metaData.relations = this.uploadRelations;
+        if (!this.relationships.isEmpty()) {
+            metaData.relations = new ProjectRelations();
+            this.relationships.forEach(metaData.relations::addRelation);
         }
 
-        if (this.parent == null) {
-            metaData.gameVersions = this.uploadVersions;
-        }
-
-        if (this.parent != null) {
-            metaData.gameVersions = null;
-            metaData.parentFileID = this.parent.curseFileId;
-        }
+        metaData.gameVersions = this.parent == null ? gameVersionIds : null;
 
         return metaData;
     }
@@ -282,7 +311,6 @@ public class CurseArtifact {
      */
     private void validate() {
        if (this.parent == null) {
-           CurseUploadApi.INSTANCE.getGameVersions().refresh();
            if (changelog == null || changelog.isEmpty()) {
                throw new IllegalArgumentException("Changelog cannot be empty");
            }
@@ -295,76 +323,255 @@ public class CurseArtifact {
 
     /**
      * INTERNAL! DO NOT CALL DIRECTLY
+     * @deprecated Uses the last created client. Upload through {@link CurseUploadApi#upload(CurseArtifact)} instead
      */
     @Deprecated
     public final void upload() throws FileNotFoundException {
+        upload(CurseUploadApi.INSTANCE);
+    }
+
+    /**
+     * INTERNAL! DO NOT CALL DIRECTLY
+     * @param api The client the file is uploaded with. Its API key, game type and settings are used for this upload
+     * @throws CurseUploadException If the API rejected the file, or could not be reached
+     */
+    public final void upload(CurseUploadApi api) throws FileNotFoundException {
+        upload(api, prepare(api));
+    }
+
+    /**
+     * Validate this file, resolve its game versions and encode its metadata, without uploading anything.
+     * Additional files must be prepared separately. The plan does not change if this artifact is modified afterwards
+     * @param api The client used to resolve the game versions
+     * @return A plan that can be uploaded with {@link #upload(CurseUploadApi, UploadPlan)}, as often as needed
+     * @throws FileNotFoundException If the file does not exist
+     * @throws me.hypherionmc.curseupload.errors.InvalidCurseVersionException If any game versions are not supported by CurseForge
+     */
+    public UploadPlan prepare(CurseUploadApi api) throws FileNotFoundException {
+        notifyPhase(api, UploadPhase.VALIDATE);
         validate();
-        prepareUpload();
-        uploadArtifact();
+        notifyPhase(api, UploadPhase.PREPARE);
+
+        if (!artifact.exists()) {
+            throw new FileNotFoundException("Failed to find upload artifact");
+        }
+
+        final GameType gameType = getGameType(api);
+        final long[] versions = this.parent == null ? api.getGameVersions().resolveGameVersionIds(gameType, gameVersions) : new long[0];
+        return new UploadPlan(this, gameType, this.artifact, versions, MetaDataCodec.encode(writeMetaData(versions)));
     }
 
     /**
-     * Process children and dependencies before uploading
+     * INTERNAL! DO NOT CALL DIRECTLY. Upload a plan made by {@link #prepare(CurseUploadApi)}. Additional files must be
+     * uploaded after their parent
+     * @param api The client the file is uploaded with. Its API key and settings are used for this upload
+     * @throws CurseUploadException If the API rejected the file, or could not be reached
      */
-    private void prepareUpload() throws FileNotFoundException {
+    public final void upload(CurseUploadApi api, UploadPlan plan) throws FileNotFoundException {
+        if (plan.getArtifact() != this) {
+            throw new IllegalArgumentException("The plan was made for " + plan.getFile().getName());
+        }
+
         if (!artifact.exists()) {
             throw new FileNotFoundException("Failed to find upload artifact");
         }
 
-        for (Map.Entry<String, String> relation : this.relationships.entrySet()) {
-            this.uploadRelations.addRelation(relation.getKey(), CurseRelationType.findValue(relation.getValue()));
+        if (artifact.length() != plan.getFileSize()) {
+            throw new CurseUploadException("Artifact " + artifact.getName() + " changed since the upload was prepared");
+        }
+
+        final UploadJournal journal = api.getJournal();
+        if (journal == null || api.isDebug()) {
+            uploadArtifact(api, plan);
+            return;
+        }
+
+        final long parentFileId = this.parent == null ? 0 : this.parent.curseFileId;
+        final UploadJournal.Claim claim;
+        try {
+            // Waits while another thread or JVM is uploading the same file
+            claim = journal.claim(this.projectId, parentFileId, plan.getHash());
+
+            if (claim.isUploaded()) {
+                this.curseFileId = claim.getFileId();
+                api.log("Skipping artifact {}, it was already uploaded with ID {}", this.artifact.getName(), claim.getFileId());
+                return;
+            }
+        } catch (IOException e) {
+            throw new CurseUploadException("Failed to read upload journal for " + this.artifact.getName(), e);
+        }
+
+        boolean uploaded = false;
+        try {
+            uploadArtifact(api, plan);
+            uploaded = true;
+        } finally {
+            if (!uploaded) {
+                try {
+                    journal.release(claim);
+                } catch (IOException e) {
+                    api.log("Failed to release artifact {} in the upload journal", this.artifact.getName(), e);
+                }
+            }
+        }
+
+        try {
+            journal.record(claim, this.curseFileId);
+        } catch (IOException e) {
+            // The file is uploaded, so only a future re-run is affected
+            api.log("Failed to record artifact {} in the upload journal", this.artifact.getName(), e);
+        }
+    }
+
+    /**
+     * INTERNAL. Tell all listeners that this upload moved to the next step
+     */
+    public void notifyPhase(CurseUploadApi api, UploadPhase phase) {
+        for (UploadListener listener : getListeners(api)) {
+            listener.onPhase(this, phase);
         }
+    }
 
-        this.uploadVersions = CurseUploadApi.INSTANCE.getGameVersions().resolveGameVersion(gameVersions);
+    /**
+     * All listeners interested in this upload. The ones registered on the client, on the parent, and on this artifact
+     */
+    private List<UploadListener> getListeners(CurseUploadApi api) {
+        final List<UploadListener> all = new ArrayList<>(api.getListeners());
+        if (this.parent != null) all.addAll(this.parent.listeners);
+        all.addAll(this.listeners);
+        return all;
     }
 
     /**
-     * Actually upload the damn file
+     * Actually upload the damn file. Failed attempts are retried according to the {@link RetryPolicy} of the client
+     * @throws CurseUploadException If the upload failed. The failure is logged before it is thrown
      */
-    private void uploadArtifact() {
-        final HttpClient client = HttpClientBuilder.create().setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.STANDARD).build()).setUserAgent("CurseUpload4J").build();
+    private void uploadArtifact(CurseUploadApi api, UploadPlan plan) {
+        final byte[] metadata = plan.getMetadata(this.parent == null ? 0 : this.parent.curseFileId);
+
+        if (api.isDebug()) {
+            // Do not upload the file. Instead, write the JSON that will be sent to the console
+            JsonObject object = new JsonObject();
+            object.add("metadata", JsonParser.parseString(new String(metadata, StandardCharsets.UTF_8)));
+            object.addProperty("file", this.artifact.getName());
 
-        final MultipartEntityBuilder requestBody = MultipartEntityBuilder.create();
-        requestBody.addTextBody("metadata", HTTPUtils.gson.toJson(this.writeMetaData()), ContentType.APPLICATION_JSON);
-        requestBody.addBinaryBody("file", this.artifact);
+            api.log(HTTPUtils.gson.toJson(object));
+            return;
+        }
 
-        final HttpPost request = new HttpPost(String.format(CurseUploadApi.INSTANCE.getGameType().uploadEndpoint(), this.projectId));
-        request.addHeader("X-Api-Token", CurseUploadApi.INSTANCE.getApiKey());
-        request.setEntity(requestBody.build());
+        final RetryPolicy retryPolicy = api.getRetryPolicy();
 
-        if (!CurseUploadApi.INSTANCE.isDebug()) {
+        for (int attempt = 1; ; attempt++) {
             try {
-                final HttpResponse response = client.execute(request);
-
-                if (response.getStatusLine().getStatusCode() == 200) {
-                    final InputStreamReader reader = new InputStreamReader(response.getEntity().getContent());
-                    this.curseFileId = HTTPUtils.gson.fromJson(reader, ResponseSuccess.class).id;
-                    reader.close();
-                    CurseUploadApi.INSTANCE.log("Successfully uploaded artifact {} with ID {}", this.artifact.getName(), this.curseFileId);
-                } else {
-                    int errorCode = response.getStatusLine().getStatusCode();
-                    String errorMessage = response.getStatusLine().getReasonPhrase();
-
-                    if (response.getFirstHeader("content-type").getValue().contains("json")) {
-                        final InputStreamReader reader = new InputStreamReader(response.getEntity().getContent());
-                        ResponseError error = HTTPUtils.gson.fromJson(reader, ResponseError.class);
-                        reader.close();
+                this.curseFileId = sendArtifact(api, plan, metadata);
+                api.log("Successfully uploaded artifact {} with ID {}", this.artifact.getName(), this.curseFileId);
+                return;
+            } catch (CurseUploadException e) {
+                if (!retryPolicy.shouldRetry(attempt, e)) {
+                    if (e.getStatusCode() == -1) {
+                        api.log("Failed to Upload artifact to CurseForge.", e.getCause());
+                    } else {
+                        api.log("Failed to Upload artifact to CurseForge. Code: {}, Error: {}", e.getErrorCode(), e.getErrorMessage());
+                    }
+                    throw e;
+                }
+
+                final long delay = retryPolicy.delayMillis(attempt, e);
+                api.log("Failed to Upload artifact {} (attempt {} of {}). Retrying in {}ms. Error: {}", this.artifact.getName(), attempt, retryPolicy.getMaxAttempts(), delay, e.getErrorMessage());
+
+                if (retryPolicy.getListener() != null) {
+                    retryPolicy.getListener().onRetry(this, attempt, delay, e);
+                }
+
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new CurseUploadException("Interrupted while waiting to retry upload of " + this.artifact.getName(), interrupted);
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a single upload request. A new request is built every time, so the file is streamed
+     * from disk again on every attempt
+     * @return The ID assigned to the file by CurseForge
+     */
+    private long sendArtifact(CurseUploadApi api, UploadPlan plan, byte[] metadata) {
+        final List<UploadListener> listeners = getListeners(api);
+        final ProgressTracker tracker = listeners.isEmpty() ? null : new ProgressTracker(this, listeners, api.getProgressInterval());
+
+        final HttpPost request = new HttpPost(String.format(plan.getGameType().uploadEndpoint(), this.projectId));
+        request.addHeader("X-Api-Token", api.getApiKey());
+        final MultipartFileEntity body = new MultipartFileEntity(metadata, this.artifact, tracker, api.getBandwidthLimiters());
+        request.setEntity(body);
+        boolean responded = false;
+
+        notifyPhase(api, UploadPhase.TRANSFER);
+        try (CloseableHttpResponse response = api.getHttpClient().execute(request)) {
+            final HttpEntity entity = response.getEntity();
+            final int statusCode = response.getStatusLine().getStatusCode();
+            final long writtenAt = body.getWrittenAt();
+
+            responded = true;
+            notifyResponse(listeners, statusCode, writtenAt == MultipartFileEntity.NOT_WRITTEN ? -1 : System.nanoTime() - writtenAt);
+            notifyPhase(api, UploadPhase.RESPONSE_PARSE);
+
+            try {
+
+                if (statusCode == 200) {
+                    final ResponseSuccess success;
+                    if (entity == null) {
+                        success = null;
+                    } else {
+                        try (InputStreamReader reader = new InputStreamReader(entity.getContent())) {
+                            success = HTTPUtils.gson.fromJson(reader, ResponseSuccess.class);
+                        }
+                    }
+
+                    // The file was most likely accepted, so this is never retried unless the caller allows it
+                    if (success == null) {
+                        throw new CurseUploadException("Failed to parse the upload response for " + this.artifact.getName() + ": the response has no body", null, true);
+                    }
+
+                    final long fileId = success.id;
+
+                    if (tracker != null) tracker.complete();
+                    return fileId;
+                }
+
+                int errorCode = statusCode;
+                String errorMessage = response.getStatusLine().getReasonPhrase();
+                final Header contentType = response.getFirstHeader("content-type");
 
-                        errorCode = error.errorCode;
-                        errorMessage = error.errorMessage;
+                if (entity != null && contentType != null && contentType.getValue().contains("json")) {
+                    try (InputStreamReader reader = new InputStreamReader(entity.getContent())) {
+                        ResponseError error = HTTPUtils.gson.fromJson(reader, ResponseError.class);
+                        if (error != null) {
+                            errorCode = error.errorCode;
+                            errorMessage = error.errorMessage;
+                        }
                     }
-                    CurseUploadApi.INSTANCE.log("Failed to Upload artifact to CurseForge. Code: {}, Error: {}", errorCode, errorMessage);
                 }
-            } catch (Exception e) {
-                CurseUploadApi.INSTANCE.log("Failed to Upload artifact to CurseForge.", e);
+
+                throw new CurseUploadException(statusCode, errorCode, errorMessage, HTTPUtils.parseRetryAfter(response));
+            } finally {
+                // Always read the response to the end, so the connection can go back to the pool
+                EntityUtils.consume(entity);
             }
-        } else {
-            // Do not upload the file. Instead, write the JSON that will be sent to the console
-            JsonObject object = new JsonObject();
-            object.add("metadata", HTTPUtils.gson.toJsonTree(this.writeMetaData()));
-            object.addProperty("file", this.artifact.getName());
+        } catch (IOException | JsonParseException e) {
+            if (!responded) notifyResponse(listeners, -1, -1);
 
-            CurseUploadApi.INSTANCE.log(HTTPUtils.gson.toJson(object));
+            // Once the whole body was written, CurseForge may have accepted the file, so it must not be sent again blindly
+            final boolean sent = responded || body.getWrittenAt() != MultipartFileEntity.NOT_WRITTEN;
+            throw new CurseUploadException("Failed to Upload artifact " + this.artifact.getName(), e, sent);
+        }
+    }
+
+    private void notifyResponse(List<UploadListener> listeners, int statusCode, long responseNanos) {
+        for (UploadListener listener : listeners) {
+            listener.onResponse(this, statusCode, responseNanos);
         }
     }
 
@@ -372,6 +579,29 @@ public class CurseArtifact {
         return children;
     }
 
+    /**
+     * The game this file is uploaded for. Falls back to the game of the parent file, and then to the game of the client
+     */
+    public GameType getGameType(CurseUploadApi api) {
+        if (this.parent != null) return this.parent.getGameType(api);
+        return this.gameType != null ? this.gameType : api.getGameType();
+    }
+
+    /**
+     * The relations added to this file, by project slug
+     */
+    public Map<String, CurseRelationType> getRelations() {
+        return Collections.unmodifiableMap(relationships);
+    }
+
+    public long getProjectId() {
+        return projectId;
+    }
+
+    public File getFile() {
+        return artifact;
+    }
+
     public long getCurseFileId() {
         return curseFileId;
     }
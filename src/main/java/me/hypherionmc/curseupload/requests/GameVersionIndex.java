@@ -0,0 +1,481 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.requests;
+
+import gnu.trove.map.TObjectLongMap;
+import gnu.trove.map.hash.TObjectLongHashMap;
+import me.hypherionmc.curseupload.constants.GameType;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author HypherionSA
+ * An immutable lookup table of the game versions supported by CurseForge for a single game.
+ * A new index is built every time the versions are refreshed, so readers never see a partially loaded table.
+ * <p>
+ * Versions can be found by name or slug, ignoring case, without allocating. Numeric versions (like 1.20.1) are also
+ * kept in version order, so patterns like {@code 1.20.x} and {@code 1.20.1-1.20.4} can be expanded with a binary search
+ */
+public final class GameVersionIndex {
+
+    public static final GameVersionIndex EMPTY = new GameVersionIndex(null, new TObjectLongHashMap<>(), new TObjectLongHashMap<>());
+
+    private static final long[] NO_IDS = new long[0];
+
+    private final @Nullable GameType gameType;
+
+    // Lookup tables by lowercase name and slug
+    private final Table names;
+    private final Table slugs;
+
+    // Versions that only contain numbers and dots, in version order
+    private final String[] releases;
+    private final long[] releaseIds;
+
+    private final List<String> sortedNames;
+
+    private GameVersionIndex(@Nullable GameType gameType, TObjectLongMap<String> versions, TObjectLongMap<String> slugs) {
+        this.gameType = gameType;
+        this.names = new Table(versions);
+        this.slugs = new Table(slugs);
+
+        final String[] sorted = versions.keys(new String[versions.size()]);
+        Arrays.sort(sorted);
+        this.sortedNames = Collections.unmodifiableList(Arrays.asList(sorted));
+
+        final List<String> releases = new ArrayList<>();
+        for (String name : sorted) {
+            if (isRelease(name)) releases.add(name);
+        }
+
+        releases.sort(GameVersionIndex::compareReleases);
+        this.releases = releases.toArray(new String[0]);
+        this.releaseIds = new long[this.releases.length];
+        for (int i = 0; i < this.releases.length; i++) {
+            this.releaseIds[i] = versions.get(this.releases[i]);
+        }
+    }
+
+    public static Builder builder(GameType gameType) {
+        return new Builder(gameType);
+    }
+
+    /**
+     * The game this index belongs to, or null for the {@link #EMPTY empty} index
+     */
+    public @Nullable GameType getGameType() {
+        return gameType;
+    }
+
+    /**
+     * Find the ID of a version, ignoring case
+     * @param name The name of the version
+     * @return The version ID, or 0 if the version does not exist
+     */
+    public long get(CharSequence name) {
+        return names.get(name);
+    }
+
+    /**
+     * Find the ID of a version by its slug, ignoring case
+     * @param slug The slug of the version, like 1-20-1
+     * @return The version ID, or 0 if the version does not exist
+     */
+    public long getBySlug(CharSequence slug) {
+        return slugs.get(slug);
+    }
+
+    /**
+     * Find all versions matching a pattern. A pattern can be:
+     * <ul>
+     *     <li>The name or slug of a version, like {@code 1.20.1} or {@code 1-20-1}</li>
+     *     <li>A numeric version ending in {@code .x} or {@code .*}, like {@code 1.20.x}, which matches 1.20 and all 1.20.* versions</li>
+     *     <li>A range of numeric versions, like {@code 1.20.1-1.20.4}, which matches all versions between them, including both ends</li>
+     * </ul>
+     * Wildcards and ranges only match numeric versions, so snapshots and loaders are never included
+     * @return The IDs of the matching versions, in version order. Empty if nothing matched
+     */
+    public long[] find(String pattern) {
+        long id = get(pattern);
+        if (id == 0) id = getBySlug(pattern);
+        if (id != 0) return new long[] { id };
+
+        final int length = pattern.length();
+        if (length > 2 && pattern.charAt(length - 2) == '.' && (Character.toLowerCase(pattern.charAt(length - 1)) == 'x' || pattern.charAt(length - 1) == '*')) {
+            final String base = pattern.substring(0, length - 2);
+            if (isRelease(base)) return expandPrefix(base);
+        }
+
+        final int dash = pattern.indexOf('-');
+        if (dash > 0) {
+            final String from = pattern.substring(0, dash);
+            final String to = pattern.substring(dash + 1);
+            if (isRelease(from) && isRelease(to)) return expandRange(from, to);
+        }
+
+        return NO_IDS;
+    }
+
+    /**
+     * Resolve versions and patterns to their unique IDs, see {@link #find(String)}.
+     * The IDs are collected in a single primitive array, which is only copied when it has to grow,
+     * or when duplicates leave it partly empty
+     * @return The unique IDs, in the order they were found, or null if any version or pattern matched nothing
+     */
+    public @Nullable long[] resolve(Collection<String> versions) {
+        long[] ids = new long[versions.size()];
+        int count = 0;
+
+        for (String version : versions) {
+            final long id = get(version);
+            final long[] matches = id != 0 ? null : find(version);
+            if (matches != null && matches.length == 0) return null;
+
+            // Patterns can add more IDs than there are versions, so exact matches after them need room as well
+            final int adding = matches == null ? 1 : matches.length;
+            if (ids.length < count + adding) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, count + adding));
+            }
+
+            if (matches == null) {
+                if (!contains(ids, count, id)) ids[count++] = id;
+                continue;
+            }
+
+            for (long match : matches) {
+                if (!contains(ids, count, match)) ids[count++] = match;
+            }
+        }
+
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    // Different spellings and overlapping patterns can resolve to the same ID
+    private static boolean contains(long[] ids, int count, long id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Find the version that is most similar to a version that does not exist, to suggest as a correction
+     * @param name The name that could not be found
+     * @return The lowercase name of the closest version, or null if no version is close enough
+     */
+    public @Nullable String suggest(String name) {
+        final String value = Builder.toLowerCase(name);
+
+        // Allow about one typo for every four characters
+        final int maxDistance = Math.max(1, value.length() / 4);
+
+        String best = null;
+        int bestDistance = maxDistance;
+        int bestPrefix = -1;
+
+        // Reused for every candidate
+        final int[][] rows = new int[3][value.length() + 1];
+
+        for (String candidate : sortedNames) {
+            if (Math.abs(candidate.length() - value.length()) > bestDistance) continue;
+
+            final int distance = distance(value, candidate, bestDistance, rows);
+            if (distance > bestDistance) continue;
+
+            // Between equally close versions, prefer the one that starts the same way
+            final int prefix = commonPrefix(value, candidate);
+            if (distance < bestDistance || prefix > bestPrefix) {
+                best = candidate;
+                bestDistance = distance;
+                bestPrefix = prefix;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * The number of single character insertions, deletions, replacements and swaps needed to turn one string into the other
+     * @return The distance, or any value above the limit once it is clear the distance is larger
+     */
+    private static int distance(String a, String b, int limit, int[][] rows) {
+        int[] previous2 = rows[0];
+        int[] previous = rows[1];
+        int[] current = rows[2];
+
+        for (int i = 0; i <= a.length(); i++) previous[i] = i;
+
+        for (int j = 1; j <= b.length(); j++) {
+            current[0] = j;
+            int rowMin = j;
+
+            for (int i = 1; i <= a.length(); i++) {
+                final int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[i - 2] + 1);
+                }
+
+                current[i] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+
+            if (rowMin > limit) return rowMin;
+
+            final int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+
+        return previous[a.length()];
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+
+    /**
+     * The lowercase names of all versions in the index, in alphabetical order
+     */
+    public List<String> names() {
+        return sortedNames;
+    }
+
+    public int size() {
+        return sortedNames.size();
+    }
+
+    public boolean isEmpty() {
+        return sortedNames.isEmpty();
+    }
+
+    // The version itself, and every version that starts with it followed by a dot. These are always next to each other
+    private long[] expandPrefix(String base) {
+        final int from = lowerBound(base);
+        int to = from;
+
+        while (to < releases.length && releases[to].startsWith(base)
+                && (releases[to].length() == base.length() || releases[to].charAt(base.length()) == '.')) {
+            to++;
+        }
+
+        return Arrays.copyOfRange(releaseIds, from, to);
+    }
+
+    private long[] expandRange(String from, String to) {
+        final int start = lowerBound(from);
+        int end = start;
+
+        while (end < releases.length && compareReleases(releases[end], to) <= 0) {
+            end++;
+        }
+
+        return Arrays.copyOfRange(releaseIds, start, end);
+    }
+
+    // The position of the first release that is not older than the given version
+    private int lowerBound(String version) {
+        int low = 0;
+        int high = releases.length;
+
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareReleases(releases[mid], version) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Check if a version only contains numbers separated by single dots, like 1.20.1
+     */
+    private static boolean isRelease(String version) {
+        if (version.isEmpty() || version.charAt(0) == '.' || version.charAt(version.length() - 1) == '.') return false;
+
+        for (int i = 0; i < version.length(); i++) {
+            final char c = version.charAt(i);
+            if (c == '.') {
+                if (version.charAt(i - 1) == '.') return false;
+            } else if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Compare two {@link #isRelease(String) numeric versions} part by part, so 1.9 comes before 1.10.
+     * A version comes before all versions that start with it, so 1.20 comes before 1.20.1
+     */
+    private static int compareReleases(String a, String b) {
+        int i = 0;
+        int j = 0;
+
+        while (i < a.length() && j < b.length()) {
+            long left = 0;
+            while (i < a.length() && a.charAt(i) != '.') left = left * 10 + (a.charAt(i++) - '0');
+
+            long right = 0;
+            while (j < b.length() && b.charAt(j) != '.') right = right * 10 + (b.charAt(j++) - '0');
+
+            if (left != right) return left < right ? -1 : 1;
+
+            // Skip the dots
+            i++;
+            j++;
+        }
+
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * An open addressing table of lowercase keys. A null key marks an empty slot
+     */
+    private static final class Table {
+        private final String[] keys;
+        private final long[] ids;
+        private final int mask;
+
+        private Table(TObjectLongMap<String> entries) {
+            int capacity = 16;
+            while (capacity < entries.size() * 2) capacity <<= 1;
+
+            this.keys = new String[capacity];
+            this.ids = new long[capacity];
+            this.mask = capacity - 1;
+
+            entries.forEachEntry((key, id) -> {
+                int slot = hash(key) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+
+                keys[slot] = key;
+                ids[slot] = id;
+                return true;
+            });
+        }
+
+        private long get(CharSequence value) {
+            int slot = hash(value) & mask;
+
+            String key;
+            while ((key = keys[slot]) != null) {
+                if (equalsIgnoreCase(key, value)) return ids[slot];
+                slot = (slot + 1) & mask;
+            }
+
+            return 0;
+        }
+
+        private static int hash(CharSequence value) {
+            int hash = 0;
+            for (int i = 0; i < value.length(); i++) {
+                hash = 31 * hash + Character.toLowerCase(value.charAt(i));
+            }
+
+            // Spread the bits, so similar names don't end up in neighbouring slots
+            return hash ^ (hash >>> 16);
+        }
+
+        /**
+         * @param key A lowercase key of the table
+         * @param value The value to compare, in any case
+         */
+        private static boolean equalsIgnoreCase(String key, CharSequence value) {
+            if (key.length() != value.length()) return false;
+
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != Character.toLowerCase(value.charAt(i))) return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Lowercase a version name or slug the same way the index does, independent of the default locale
+     */
+    static String normalize(String name) {
+        return Builder.toLowerCase(name);
+    }
+
+    /**
+     * Collects versions for a new index. A builder must not be used after {@link #build()}
+     */
+    public static final class Builder {
+        private final GameType gameType;
+        private final TObjectLongMap<String> versions = new TObjectLongHashMap<>();
+        private final TObjectLongMap<String> slugs = new TObjectLongHashMap<>();
+
+        private Builder(GameType gameType) {
+            this.gameType = gameType;
+        }
+
+        /**
+         * @param name The name of the version. Lookups ignore case
+         * @param id The CurseForge ID of the version
+         */
+        public Builder add(String name, long id) {
+            versions.put(toLowerCase(name), id);
+            return this;
+        }
+
+        /**
+         * @param slug The slug of the version. Lookups ignore case
+         * @param id The CurseForge ID of the version
+         */
+        public Builder addSlug(String slug, long id) {
+            slugs.put(toLowerCase(slug), id);
+            return this;
+        }
+
+        public GameVersionIndex build() {
+            return new GameVersionIndex(gameType, versions, slugs);
+        }
+
+        // Lowercased char by char, to match the lookups
+        private static String toLowerCase(String name) {
+            final char[] chars = name.toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = Character.toLowerCase(chars[i]);
+            }
+
+            return new String(chars);
+        }
+    }
+}
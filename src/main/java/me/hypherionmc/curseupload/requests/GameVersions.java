@@ -23,71 +23,346 @@
  */
 package me.hypherionmc.curseupload.requests;
 
-import gnu.trove.map.TObjectLongMap;
-import gnu.trove.map.hash.TObjectLongHashMap;
 import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
 import me.hypherionmc.curseupload.CurseUploadApi;
 import me.hypherionmc.curseupload.constants.GameType;
+import me.hypherionmc.curseupload.errors.CurseUploadException;
 import me.hypherionmc.curseupload.errors.InvalidCurseVersionException;
-import me.hypherionmc.curseupload.schema.versions.Version;
-import me.hypherionmc.curseupload.schema.versions.VersionType;
+import me.hypherionmc.curseupload.schema.versions.VersionSnapshot;
 import me.hypherionmc.curseupload.util.HTTPUtils;
+import me.hypherionmc.curseupload.util.VersionFeedParser;
+import me.hypherionmc.curseupload.util.VersionSnapshotStore;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.Reader;
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author HypherionSA
- * Used to fetch and validate supported Minecraft Versions from Curseforge
+ * Used to fetch and validate supported Minecraft Versions from Curseforge.
+ * Every {@link GameType} has its own versions, which are only loaded the first time they are needed
  */
 public class GameVersions {
 
-    // Cached Versions
-    private final TObjectLongMap<String> gameVersions = new TObjectLongHashMap<>();
+    // The client the versions are fetched for
+    private final CurseUploadApi api;
 
-    // Update or load the cache
+    // A failed lookup only forces a refresh if the cache is older than this
+    private static final long MISS_REFRESH_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    // The cached versions of each game. The map itself is never modified after construction
+    private final Map<GameType, Cache> caches = new EnumMap<>(GameType.class);
+
+    // How long fetched versions stay valid
+    private volatile long ttlNanos = TimeUnit.MINUTES.toNanos(30);
+
+    // How long to wait for a refresh that was started by someone else, like the warm-up of a new client
+    private volatile long refreshTimeoutNanos = TimeUnit.SECONDS.toNanos(60);
+
+    // Where snapshots of the versions are stored between runs
+    private volatile @Nullable VersionSnapshotStore store = VersionSnapshotStore.defaultStore();
+
+    public GameVersions(CurseUploadApi api) {
+        this.api = api;
+
+        for (GameType gameType : GameType.values()) {
+            caches.put(gameType, new Cache(gameType));
+        }
+    }
+
+    /**
+     * Set how long fetched versions are used before they are fetched again
+     */
+    public void setCacheTtl(long duration, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Set how long version lookups wait for a refresh that is already running, like the warm-up started by a new client.
+     * When the wait times out, the versions that are already loaded are used
+     */
+    public void setRefreshTimeout(long duration, TimeUnit unit) {
+        this.refreshTimeoutNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * The currently loaded versions of the game the client is set to. The returned index never changes, even if the versions are refreshed later
+     */
+    public GameVersionIndex getIndex() {
+        return getIndex(api.getGameType());
+    }
+
+    /**
+     * The currently loaded versions of a game. The returned index never changes, even if the versions are refreshed later
+     * @return The versions, or an {@link GameVersionIndex#EMPTY empty} index if they were never loaded
+     */
+    public GameVersionIndex getIndex(GameType gameType) {
+        return caches.get(gameType).index;
+    }
+
+    /**
+     * Set where snapshots of the fetched versions are stored between runs
+     * @param store The store to use, or null to disable snapshots
+     */
+    public void setSnapshotStore(@Nullable VersionSnapshotStore store) {
+        this.store = store;
+    }
+
+    // Load the cache for the game the client is set to, or update it when it is older than the cache TTL
     public void refresh() {
-        if (CurseUploadApi.INSTANCE == null) {
-            throw new NullPointerException("CurseUploadAPI is null. Did you forget to initialize it?");
+        refresh(api.getGameType());
+    }
+
+    // Load the cache of a game, or update it when it is older than the cache TTL
+    public void refresh(GameType gameType) {
+        final Cache cache = caches.get(gameType);
+
+        if (loadSnapshot(cache)) {
+            // Serve the versions from disk right away, and check for changes in the background
+            CompletableFuture.runAsync(() -> forceRefresh(cache), api.getExecutor());
+            return;
+        }
+
+        if (cache.isStale(ttlNanos)) {
+            forceRefresh(cache);
+        }
+    }
+
+    /**
+     * Load the versions of a game on the executor of the client, unless they are already loaded
+     * @return A future that completes once the versions can be used, or exceptionally if they could not be loaded
+     */
+    public CompletableFuture<Void> prewarm(GameType gameType) {
+        final Cache cache = caches.get(gameType);
+        if (!cache.isStale(ttlNanos)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.runAsync(() -> {
+            refresh(gameType);
+
+            if (cache.index.isEmpty()) {
+                throw new CurseUploadException("Failed to load CurseForge Versions for " + gameType);
+            }
+        }, api.getExecutor());
+    }
+
+    /**
+     * Fetch the versions of the game the client is set to from CurseForge, even if the cache is still valid.
+     * If another thread is already fetching them, wait for that refresh instead of starting a new one
+     */
+    public void forceRefresh() {
+        forceRefresh(api.getGameType());
+    }
+
+    /**
+     * Fetch the versions of a game from CurseForge, even if the cache is still valid.
+     * If another thread is already fetching them, wait for that refresh instead of starting a new one, for at most the
+     * {@link #setRefreshTimeout(long, TimeUnit) refresh timeout}
+     */
+    public void forceRefresh(GameType gameType) {
+        forceRefresh(caches.get(gameType));
+    }
+
+    private void forceRefresh(Cache cache) {
+        final CompletableFuture<Void> refresh = new CompletableFuture<>();
+        final CompletableFuture<Void> running = cache.inFlight.updateAndGet(current -> current == null ? refresh : current);
+
+        if (running != refresh) {
+            awaitRefresh(cache, running);
+            return;
+        }
+
+        try {
+            if (this.fetchValidVersionTypes(cache)) {
+                cache.lastRefresh = System.nanoTime();
+            }
+        } finally {
+            cache.inFlight.set(null);
+            refresh.complete(null);
+        }
+    }
+
+    private void awaitRefresh(Cache cache, CompletableFuture<Void> running) {
+        try {
+            running.get(refreshTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            api.log("Timed out waiting for CurseForge Versions of " + cache.gameType + ". Using the versions that are already loaded");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Refreshes log their own failures, and always complete normally
+        }
+    }
+
+    /**
+     * Load the versions of a game from the snapshot on disk, if nothing is loaded for it yet
+     * @return True if the snapshot was loaded
+     */
+    private boolean loadSnapshot(Cache cache) {
+        final VersionSnapshotStore store = this.store;
+        if (store == null || cache.lastRefresh != 0) return false;
+
+        synchronized (cache) {
+            if (cache.lastRefresh != 0) return false;
+
+            final VersionSnapshot snapshot = store.load(cache.gameType);
+            // Snapshots from older versions don't contain slugs, so they are fetched again
+            if (snapshot == null || snapshot.versions == null || snapshot.versions.isEmpty() || snapshot.slugs == null) return false;
+
+            cache.publish(snapshot);
+            cache.lastRefresh = System.nanoTime();
+            return true;
         }
-        this.fetchValidVersionTypes();
     }
 
     /**
-     * Get supported game versions from Curseforge and filter out the correct values
+     * Get supported game versions from Curseforge and filter out the correct values.
+     * If a snapshot is loaded, conditional requests are used, so unchanged lists are not downloaded again.
+     * <p>
+     * The two lists don't depend on each other until the versions are filtered, so the version types are fetched on the
+     * executor while the versions are requested on the calling thread
+     * @return True if the versions were fetched
      */
-    private void fetchValidVersionTypes() {
-        this.gameVersions.clear();
-        GameType gameType = CurseUploadApi.INSTANCE.getGameType();
+    private boolean fetchValidVersionTypes(Cache cache) {
+        final GameType gameType = cache.gameType;
+        final VersionSnapshot previous = cache.snapshot;
+        final VersionSnapshot next = new VersionSnapshot();
+
+        final CompletableFuture<Boolean> types = new CompletableFuture<>();
+        final AtomicBoolean typesStarted = new AtomicBoolean();
+        final Runnable typesTask = () -> {
+            // Runs only once, either on the executor or on the calling thread
+            if (!typesStarted.compareAndSet(false, true)) return;
+
+            try {
+                types.complete(fetchTypes(gameType, previous, next));
+            } catch (Throwable t) {
+                types.completeExceptionally(t);
+            }
+        };
 
         try {
-            TLongSet validVersionTypes = new TLongHashSet();
+            api.getExecutor().execute(typesTask);
+        } catch (RejectedExecutionException e) {
+            // Fetched on the calling thread below
+        }
 
-            VersionType[] types;
-            try (Reader versionReader = HTTPUtils.fetch(gameType.versionTypesEndpoint())) {
-                types = HTTPUtils.gson.fromJson(versionReader, VersionType[].class);
+        try {
+            boolean refetch = false;
+
+            try (HTTPUtils.ConditionalResponse response = HTTPUtils.fetchIfModified(api.getHttpClient(), gameType.versionsEndpoint(),
+                    previous == null ? null : previous.versionsEtag, previous == null ? null : previous.versionsLastModified)) {
+                // If the executor is busy, don't wait for it to get to the types
+                typesTask.run();
+                final boolean typesChanged = types.get();
+
+                if (!response.isNotModified()) {
+                    readVersions(response, next);
+                } else if (!typesChanged) {
+                    next.versionsEtag = response.getEtag();
+                    next.versionsLastModified = response.getLastModified();
+                    next.versions = previous.versions;
+                    next.slugs = previous.slugs;
+                } else {
+                    // The cached versions were filtered with the old types, so the full list is needed again
+                    refetch = true;
+                }
             }
 
-            for (VersionType type : types) {
-                if (type.slug().startsWith("minecraft") || type.slug().equals("java") || type.slug().equals("environment") || type.slug().equals("modloader") || type.slug().equals("game")) {
-                    validVersionTypes.add(type.id());
+            if (refetch) {
+                try (HTTPUtils.ConditionalResponse response = HTTPUtils.fetchIfModified(api.getHttpClient(), gameType.versionsEndpoint(), null, null)) {
+                    readVersions(response, next);
                 }
             }
 
-            Version[] versions;
-            try (Reader gameVersionJson = HTTPUtils.fetch(gameType.versionsEndpoint())) {
-                versions = HTTPUtils.gson.fromJson(gameVersionJson, Version[].class);
+            if (previous != null && next.versions == previous.versions && next.validTypes == previous.validTypes) {
+                // Nothing changed upstream
+                cache.snapshot = next;
+                return true;
             }
 
-            Arrays.stream(versions)
-                    .filter(version -> validVersionTypes.contains(version.type()))
-                    .flatMap(version -> version.versions().stream())
-                    .forEach(data -> gameVersions.put(data.name().toLowerCase(), data.id()));
+            cache.publish(next);
+            saveSnapshot(gameType, next);
+            return true;
+        } catch (ExecutionException e) {
+            api.log("Failed to fetch CurseForge Versions", e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            api.log("Interrupted while fetching CurseForge Versions", e);
+            return false;
         } catch (Exception e) {
-            CurseUploadApi.INSTANCE.log("Failed to fetch CurseForge Versions", e);
+            api.log("Failed to fetch CurseForge Versions", e);
+            return false;
+        }
+    }
+
+    /**
+     * Fetch the version types, and store the supported ones in the new snapshot
+     * @return True if the types changed since the previous snapshot
+     */
+    private boolean fetchTypes(GameType gameType, @Nullable VersionSnapshot previous, VersionSnapshot next) throws IOException {
+        try (HTTPUtils.ConditionalResponse response = HTTPUtils.fetchIfModified(api.getHttpClient(), gameType.versionTypesEndpoint(),
+                previous == null ? null : previous.typesEtag, previous == null ? null : previous.typesLastModified)) {
+            next.typesEtag = response.getEtag();
+            next.typesLastModified = response.getLastModified();
+
+            if (previous != null && response.isNotModified()) {
+                next.validTypes = previous.validTypes;
+                return false;
+            }
+
+            next.validTypes = VersionFeedParser.parseTypes(response.getBody(), GameVersions::isSupportedType);
+            return true;
+        }
+    }
+
+    /**
+     * Read the versions of the supported version types into the new snapshot. The types must already be fetched
+     */
+    private static void readVersions(HTTPUtils.ConditionalResponse response, VersionSnapshot next) throws IOException {
+        next.versionsEtag = response.getEtag();
+        next.versionsLastModified = response.getLastModified();
+
+        final TLongSet validVersionTypes = new TLongHashSet(next.validTypes);
+        // Stored as sent. The index ignores case, and lowercases them the same way for every locale
+        VersionFeedParser.parseVersions(response.getBody(), validVersionTypes, (name, slug, id) -> {
+            next.versions.put(name, id);
+            if (!slug.isEmpty()) next.slugs.put(slug, id);
+        });
+    }
+
+    /**
+     * Check if versions of a version type can be used for uploads
+     * @param slug The slug of the version type
+     */
+    private static boolean isSupportedType(String slug) {
+        return slug.startsWith("minecraft") || slug.equals("java") || slug.equals("environment") || slug.equals("modloader") || slug.equals("game");
+    }
+
+    private void saveSnapshot(GameType gameType, VersionSnapshot snapshot) {
+        final VersionSnapshotStore store = this.store;
+        if (store == null) return;
+
+        try {
+            store.save(gameType, snapshot);
+        } catch (IOException e) {
+            api.log("Failed to save CurseForge Versions snapshot", e);
         }
     }
 
@@ -99,17 +374,86 @@ public class GameVersions {
      * @throws InvalidCurseVersionException If any game versions are not supported by CurseForge
      */
     public Set<Long> resolveGameVersion(Set<String> objects) {
-        Set<Long> ids = new HashSet<>();
-        Set<String> invalid = new HashSet<>();
-
-        objects.forEach(obj -> {
-            String version = obj.toLowerCase();
-            long id = gameVersions.get(version);
-            if (id == 0) invalid.add(version);
-            else ids.add(id);
-        });
+        final Set<Long> ids = new HashSet<>();
+        for (long id : resolveGameVersionIds(api.getGameType(), objects)) ids.add(id);
+        return ids;
+    }
+
+    /**
+     * Convert a list of Game Versions of the game the client is set to into their IDs
+     * @see #resolveGameVersionIds(GameType, Collection)
+     */
+    public long[] resolveGameVersionIds(Collection<String> versions) {
+        return resolveGameVersionIds(api.getGameType(), versions);
+    }
+
+    /**
+     * Convert a list of Game Versions into their IDs, ignoring case. Unlike {@link #resolveGameVersion(Set)}, this
+     * does not box the IDs, see {@link GameVersionIndex#resolve(Collection)}.
+     * Versions can also be slugs, or patterns like {@code 1.20.x} and {@code 1.20.1-1.20.4}, see {@link GameVersionIndex#find(String)}
+     * @param gameType The game the versions belong to
+     * @param versions The game versions or patterns to check
+     * @return The unique IDs of the game versions
+     * @throws InvalidCurseVersionException If any game versions are not supported by CurseForge
+     */
+    public long[] resolveGameVersionIds(GameType gameType, Collection<String> versions) {
+        final Cache cache = caches.get(gameType);
+        final long[] ids = cache.index.resolve(versions);
+        if (ids != null) return ids;
+
+        // The versions might have been added since the cache was loaded
+        if (cache.isStale(MISS_REFRESH_INTERVAL)) {
+            forceRefresh(cache);
+            final long[] retried = cache.index.resolve(versions);
+            if (retried != null) return retried;
+        }
+
+        final GameVersionIndex index = cache.index;
+        final List<String> invalid = new ArrayList<>();
+        for (String version : versions) {
+            if (index.get(version) == 0 && index.find(version).length == 0) invalid.add(GameVersionIndex.normalize(version));
+        }
+
+        throw InvalidCurseVersionException.of(invalid, index);
+    }
+
+    /**
+     * The versions of a single game, and the state needed to keep them up to date
+     */
+    private static final class Cache {
+        private final GameType gameType;
+
+        // Replaced as a whole on every refresh, and never modified in place
+        private volatile GameVersionIndex index = GameVersionIndex.EMPTY;
+
+        // When the cache was last loaded successfully
+        private volatile long lastRefresh = 0;
 
-        if (invalid.isEmpty()) return ids;
-        else throw InvalidCurseVersionException.of(invalid, gameVersions.keySet());
+        // The last known good versions, with the validators needed to check if they changed
+        private volatile @Nullable VersionSnapshot snapshot;
+
+        // The refresh that is currently running, if any. Shared by everyone who needs the versions at the same time
+        private final AtomicReference<CompletableFuture<Void>> inFlight = new AtomicReference<>();
+
+        private Cache(GameType gameType) {
+            this.gameType = gameType;
+        }
+
+        private boolean isStale(long maxAge) {
+            return lastRefresh == 0 || System.nanoTime() - lastRefresh > maxAge;
+        }
+
+        /**
+         * Replace the cached versions with the contents of a snapshot. The new index is built first, and then
+         * swapped in with a single write, so concurrent lookups see either the old or the new versions
+         */
+        private void publish(VersionSnapshot snapshot) {
+            final GameVersionIndex.Builder builder = GameVersionIndex.builder(gameType);
+            snapshot.versions.forEach(builder::add);
+            snapshot.slugs.forEach(builder::addSlug);
+
+            this.snapshot = snapshot;
+            this.index = builder.build();
+        }
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.requests;
+
+import me.hypherionmc.curseupload.constants.GameType;
+import me.hypherionmc.curseupload.util.UploadJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @author HypherionSA
+ * Everything needed to upload a single {@link CurseArtifact}, worked out in advance by {@link CurseArtifact#prepare(me.hypherionmc.curseupload.CurseUploadApi)}.
+ * <p>
+ * A plan never changes after it is created, and can be shared between threads. It can be uploaded more than once,
+ * for example to retry later, without validating the artifact, resolving versions or encoding the metadata again
+ */
+public final class UploadPlan {
+
+    private final CurseArtifact artifact;
+    private final GameType gameType;
+    private final File file;
+    private final long fileSize;
+    private final long[] gameVersionIds;
+
+    // Compact UTF-8 JSON, without the parent file ID, which is only known once the parent is uploaded
+    private final byte[] metadata;
+
+    // Only calculated when the upload journal needs it
+    private volatile String hash;
+
+    UploadPlan(CurseArtifact artifact, GameType gameType, File file, long[] gameVersionIds, byte[] metadata) {
+        this.artifact = artifact;
+        this.gameType = gameType;
+        this.file = file;
+        this.fileSize = file.length();
+        this.gameVersionIds = gameVersionIds;
+        this.metadata = metadata;
+    }
+
+    public CurseArtifact getArtifact() {
+        return artifact;
+    }
+
+    /**
+     * The game the file is uploaded for, which decides the upload endpoint
+     */
+    public GameType getGameType() {
+        return gameType;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The size of the file when the plan was made. Uploading fails if the file changed since
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * The resolved game version IDs. Empty for additional files, which use the versions of their parent
+     */
+    public long[] getGameVersionIds() {
+        return gameVersionIds.clone();
+    }
+
+    /**
+     * INTERNAL. The UTF-8 encoded metadata for the upload request
+     * @param parentFileId The CurseForge ID of the parent file, or 0 for main files
+     * @return The metadata. Must not be modified
+     */
+    public byte[] getMetadata(long parentFileId) {
+        if (parentFileId == 0) return metadata;
+
+        // The encoded object always has fields, so the ID can be added in front of the closing brace
+        final byte[] field = (",\"parentFileID\":" + parentFileId + "}").getBytes(StandardCharsets.UTF_8);
+        final byte[] result = Arrays.copyOf(metadata, metadata.length - 1 + field.length);
+        System.arraycopy(field, 0, result, metadata.length - 1, field.length);
+        return result;
+    }
+
+    /**
+     * The {@link UploadJournal#hash(File) hash} of the file, calculated the first time it is needed
+     */
+    public String getHash() throws IOException {
+        String value = this.hash;
+        if (value == null) {
+            value = UploadJournal.hash(file);
+            this.hash = value;
+        }
+
+        return value;
+    }
+}
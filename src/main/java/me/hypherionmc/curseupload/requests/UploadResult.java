@@ -0,0 +1,124 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.requests;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * @author HypherionSA
+ * The outcome of uploading a {@link CurseArtifact}, including the results of its children
+ */
+public class UploadResult {
+
+    private final CurseArtifact artifact;
+    private final long fileId;
+    private final @Nullable RuntimeException error;
+    private final boolean cancelled;
+    private final List<UploadResult> children;
+
+    private UploadResult(CurseArtifact artifact, long fileId, @Nullable RuntimeException error, boolean cancelled, List<UploadResult> children) {
+        this.artifact = artifact;
+        this.fileId = fileId;
+        this.error = error;
+        this.cancelled = cancelled;
+        this.children = Collections.unmodifiableList(new ArrayList<>(children));
+    }
+
+    public static UploadResult success(CurseArtifact artifact, long fileId, List<UploadResult> children) {
+        return new UploadResult(artifact, fileId, null, false, children);
+    }
+
+    public static UploadResult failure(CurseArtifact artifact, RuntimeException error) {
+        return new UploadResult(artifact, 0, error, false, Collections.emptyList());
+    }
+
+    /**
+     * The upload was never attempted, because something it depends on failed
+     */
+    public static UploadResult cancelled(CurseArtifact artifact, String reason) {
+        return new UploadResult(artifact, 0, new CancellationException(reason), true, Collections.emptyList());
+    }
+
+    public CurseArtifact getArtifact() {
+        return artifact;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Check if the upload was never attempted, because something it depends on failed. Uploads that were attempted and
+     * failed are never cancelled, whatever their error is
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Check if this file, or any of its children failed to upload
+     */
+    public boolean hasFailures() {
+        return !isSuccess() || children.stream().anyMatch(c -> !c.isSuccess());
+    }
+
+    /**
+     * The ID of the uploaded file. Will be 0 in debug mode, or when the upload failed
+     */
+    public long getFileId() {
+        return fileId;
+    }
+
+    /**
+     * The reason the upload failed, or null if it succeeded
+     */
+    public @Nullable RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * The results of the additional files, in the order they were added
+     */
+    public List<UploadResult> getChildren() {
+        return children;
+    }
+
+    /**
+     * The IDs of the additional files that were uploaded successfully, in the order they were added
+     */
+    public List<Long> getChildFileIds() {
+        List<Long> ids = new ArrayList<>();
+
+        for (UploadResult child : children) {
+            if (child.isSuccess()) ids.add(child.fileId);
+        }
+
+        return ids;
+    }
+}
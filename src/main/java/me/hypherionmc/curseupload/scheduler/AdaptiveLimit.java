@@ -0,0 +1,222 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.scheduler;
+
+import me.hypherionmc.curseupload.listeners.LimitListener;
+import me.hypherionmc.curseupload.listeners.UploadListener;
+import me.hypherionmc.curseupload.requests.CurseArtifact;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * @author HypherionSA
+ * Adjusts how many uploads run at the same time, based on how CurseForge responds (additive increase, multiplicative decrease).
+ * <p>
+ * Every successful response raises the limit a little, so it grows by about 1 for every full round of uploads. A rate limit (429),
+ * a server error (5xx), a failed connection, or a response time well above the fastest one seen so far lowers the limit
+ * by the decrease factor. The limit is lowered at most once per round, so uploads that were already running when the
+ * problem started don't lower it again. After every decrease, response times are measured from scratch.
+ * <p>
+ * A {@link BatchUpload} registers the limit on each of its own artifacts while it runs, so the limit is only adjusted
+ * from the responses to the uploads of that batch, and their additional files
+ */
+public class AdaptiveLimit implements UploadListener {
+
+    // Bounds and tuning
+    private int minLimit = 1;
+    private int maxLimit = 16;
+    private double decrease = 0.5;
+    private double latencyTolerance = 2.0;
+    private @Nullable LimitListener listener;
+
+    // Current state. Guarded by this
+    private double limit;
+    private int sinceDecrease;
+    private double smoothedLatency = -1;
+    private long minLatency = Long.MAX_VALUE;
+    private int latencySamples = 0;
+    private String reason = "initial limit";
+
+    // The limit asked for in the constructor. Used until the first adjustment, so bounds set afterwards can allow it
+    private final int initialLimit;
+    private boolean adjusted = false;
+
+    // Response times are only compared after this many samples, so a few fast responses don't set the baseline
+    private static final int MIN_LATENCY_SAMPLES = 5;
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    /**
+     * @param initialLimit The number of uploads that may run at the same time before anything is known.
+     *                     Kept within the {@link #bounds(int, int) bounds}, 1 to 16 by default
+     */
+    public AdaptiveLimit(int initialLimit) {
+        if (initialLimit < 1) {
+            throw new IllegalArgumentException("The initial limit must be at least 1");
+        }
+
+        this.initialLimit = initialLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        // The first sign of overload can lower the limit right away
+        this.sinceDecrease = initialLimit;
+    }
+
+    /**
+     * The range the limit stays in
+     */
+    public synchronized AdaptiveLimit bounds(int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must be at least 1, and the maximum can not be below the minimum");
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, adjusted ? limit : initialLimit));
+        return this;
+    }
+
+    /**
+     * The factor the limit is multiplied with when CurseForge is overloaded. Must be between 0 and 1
+     */
+    public synchronized AdaptiveLimit decrease(double decrease) {
+        if (decrease <= 0 || decrease >= 1) {
+            throw new IllegalArgumentException("The decrease factor must be between 0 and 1");
+        }
+
+        this.decrease = decrease;
+        return this;
+    }
+
+    /**
+     * How many times slower than the fastest response seen so far responses may get before the limit is lowered
+     */
+    public synchronized AdaptiveLimit latencyTolerance(double latencyTolerance) {
+        if (latencyTolerance <= 1) {
+            throw new IllegalArgumentException("The latency tolerance must be above 1");
+        }
+
+        this.latencyTolerance = latencyTolerance;
+        return this;
+    }
+
+    /**
+     * Get notified every time the limit changes
+     */
+    public synchronized AdaptiveLimit listener(@Nullable LimitListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * The number of uploads that may currently run at the same time
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Why the limit last changed
+     */
+    public synchronized String getReason() {
+        return reason;
+    }
+
+    @Override
+    public void onResponse(CurseArtifact artifact, int statusCode, long responseNanos) {
+        final int previous;
+        final int current;
+        final String why;
+        final LimitListener listener;
+
+        synchronized (this) {
+            previous = (int) limit;
+            sinceDecrease++;
+
+            if (statusCode == 429) {
+                why = lower("rate limited (429)");
+            } else if (statusCode == -1) {
+                why = lower("no response from CurseForge");
+            } else if (statusCode >= 500) {
+                why = lower("server error (" + statusCode + ")");
+            } else if (statusCode >= 200 && statusCode < 300) {
+                why = isSlow(responseNanos) ? lower("response time rising") : raise();
+            } else {
+                // Rejected uploads say nothing about load
+                why = null;
+            }
+
+            current = (int) limit;
+            listener = this.listener;
+        }
+
+        if (why != null && listener != null && current != previous) {
+            listener.onLimitChange(previous, current, why);
+        }
+    }
+
+    // Compare a response time to the fastest responses seen so far. Must hold the lock
+    private boolean isSlow(long responseNanos) {
+        if (responseNanos < 0) return false;
+
+        minLatency = Math.min(minLatency, responseNanos);
+        smoothedLatency = smoothedLatency < 0 ? responseNanos : smoothedLatency + LATENCY_SMOOTHING * (responseNanos - smoothedLatency);
+        latencySamples++;
+
+        return latencySamples >= MIN_LATENCY_SAMPLES && smoothedLatency > minLatency * latencyTolerance;
+    }
+
+    // Must hold the lock
+    private @Nullable String raise() {
+        final int before = (int) limit;
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+        adjusted = true;
+        if ((int) limit == before) return null;
+
+        reason = "responses stable";
+        return reason;
+    }
+
+    // Must hold the lock
+    private @Nullable String lower(String why) {
+        // Only once per round of uploads, since the uploads already running were started with the old limit
+        if (sinceDecrease < (int) limit) return null;
+
+        sinceDecrease = 0;
+        limit = Math.max(minLimit, limit * decrease);
+        adjusted = true;
+
+        // Start measuring again. If responses stay slow at the lower limit, the cause is not the number of uploads,
+        // so the slower responses become the new baseline
+        smoothedLatency = -1;
+        minLatency = Long.MAX_VALUE;
+        latencySamples = 0;
+
+        reason = why;
+        return reason;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveLimit " + getLimit() + " (" + reason + ")";
+    }
+}
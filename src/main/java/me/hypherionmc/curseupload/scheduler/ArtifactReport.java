@@ -0,0 +1,92 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.scheduler;
+
+import me.hypherionmc.curseupload.constants.UploadStatus;
+import me.hypherionmc.curseupload.requests.CurseArtifact;
+import me.hypherionmc.curseupload.requests.UploadResult;
+
+import java.time.Duration;
+
+/**
+ * @author HypherionSA
+ * The outcome of a single artifact in a {@link BatchUpload}
+ */
+public class ArtifactReport {
+
+    private final CurseArtifact artifact;
+    private final UploadResult result;
+    private final long bytes;
+    private final Duration time;
+
+    public ArtifactReport(CurseArtifact artifact, UploadResult result, long bytes, Duration time) {
+        this.artifact = artifact;
+        this.result = result;
+        this.bytes = bytes;
+        this.time = time;
+    }
+
+    public CurseArtifact getArtifact() {
+        return artifact;
+    }
+
+    public UploadStatus getStatus() {
+        if (result.isCancelled()) return UploadStatus.CANCELLED;
+        if (!result.isSuccess()) return UploadStatus.FAILED;
+        return result.hasFailures() ? UploadStatus.PARTIAL : UploadStatus.SUCCESS;
+    }
+
+    /**
+     * The ID of the main file, or 0 if it failed to upload
+     */
+    public long getFileId() {
+        return result.getFileId();
+    }
+
+    /**
+     * The full result, including the additional files
+     */
+    public UploadResult getResult() {
+        return result;
+    }
+
+    /**
+     * The combined size of the main file and its additional files
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * How long the artifact took to upload, from the moment it was started
+     */
+    public Duration getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return artifact.getFile().getName() + " (" + artifact.getProjectId() + "): " + getStatus() + ", ID " + getFileId() + ", " + bytes + " bytes in " + time.toMillis() + "ms";
+    }
+}
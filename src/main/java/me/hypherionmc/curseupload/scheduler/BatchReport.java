@@ -0,0 +1,75 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.scheduler;
+
+import me.hypherionmc.curseupload.constants.UploadStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author HypherionSA
+ * The combined outcome of a {@link BatchUpload}
+ */
+public class BatchReport {
+
+    private final List<ArtifactReport> artifacts;
+    private final Duration time;
+
+    public BatchReport(List<ArtifactReport> artifacts, Duration time) {
+        this.artifacts = Collections.unmodifiableList(new ArrayList<>(artifacts));
+        this.time = time;
+    }
+
+    /**
+     * One report per artifact, in the order they were added to the batch
+     */
+    public List<ArtifactReport> getArtifacts() {
+        return artifacts;
+    }
+
+    /**
+     * The wall-clock time of the whole batch
+     */
+    public Duration getTime() {
+        return time;
+    }
+
+    public long count(UploadStatus status) {
+        return artifacts.stream().filter(a -> a.getStatus() == status).count();
+    }
+
+    /**
+     * Check if every artifact, and all of their additional files, were uploaded
+     */
+    public boolean isSuccess() {
+        return count(UploadStatus.SUCCESS) == artifacts.size();
+    }
+
+    public long getTotalBytes() {
+        return artifacts.stream().mapToLong(ArtifactReport::getBytes).sum();
+    }
+}
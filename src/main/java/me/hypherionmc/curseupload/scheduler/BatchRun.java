@@ -0,0 +1,142 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.scheduler;
+
+import me.hypherionmc.curseupload.CurseUploadApi;
+import me.hypherionmc.curseupload.errors.CurseUploadException;
+import me.hypherionmc.curseupload.requests.CurseArtifact;
+import me.hypherionmc.curseupload.requests.UploadPlan;
+import me.hypherionmc.curseupload.requests.UploadResult;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author HypherionSA
+ * Bookkeeping shared by the schedulers. Collects a report for every artifact, and completes the result once all of them
+ * have one
+ */
+class BatchRun {
+
+    final CurseUploadApi api;
+    final List<CurseArtifact> artifacts;
+    final CompletableFuture<BatchReport> result = new CompletableFuture<>();
+
+    private final ArtifactReport[] reports;
+    private final long startTime = System.nanoTime();
+    private int remaining;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    BatchRun(CurseUploadApi api, List<CurseArtifact> artifacts) {
+        this.api = api;
+        this.artifacts = artifacts;
+        this.reports = new ArtifactReport[artifacts.size()];
+        this.remaining = artifacts.size();
+    }
+
+    /**
+     * Upload an artifact and its children. Never throws, so an artifact can't be left without a report
+     */
+    UploadResult upload(CurseArtifact artifact) {
+        try {
+            return api.uploadTree(artifact);
+        } catch (RuntimeException e) {
+            return UploadResult.failure(artifact, e);
+        } catch (Throwable e) {
+            return UploadResult.failure(artifact, new CurseUploadException("Failed to Upload artifact " + artifact.getFile().getName(), e));
+        }
+    }
+
+    UploadResult upload(UploadPlan plan) {
+        try {
+            return api.uploadTree(plan);
+        } catch (RuntimeException e) {
+            return UploadResult.failure(plan.getArtifact(), e);
+        } catch (Throwable e) {
+            return UploadResult.failure(plan.getArtifact(), new CurseUploadException("Failed to Upload artifact " + plan.getFile().getName(), e));
+        }
+    }
+
+    ArtifactReport report(int index, UploadResult upload, long startTime) {
+        final CurseArtifact artifact = artifacts.get(index);
+        return new ArtifactReport(artifact, upload, totalBytes(artifact), Duration.ofNanos(System.nanoTime() - startTime));
+    }
+
+    void complete(int index, UploadResult upload, long startTime) {
+        complete(index, report(index, upload, startTime));
+    }
+
+    /**
+     * Record the outcome of an artifact. Completes the result once every artifact has one, so it must not be called
+     * while holding a lock. See {@link #record(int, ArtifactReport)}
+     */
+    void complete(int index, ArtifactReport report) {
+        if (record(index, report)) finish();
+    }
+
+    /**
+     * Record the outcome of an artifact, without completing the result
+     * @return True if every artifact now has an outcome, and {@link #finish()} should be called
+     */
+    synchronized boolean record(int index, ArtifactReport report) {
+        reports[index] = report;
+        return --remaining == 0;
+    }
+
+    synchronized boolean isComplete(int index) {
+        return reports[index] != null;
+    }
+
+    synchronized int getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * Complete the result. Only the first call has any effect
+     */
+    void finish() {
+        if (!finished.compareAndSet(false, true)) return;
+
+        final List<ArtifactReport> list;
+
+        synchronized (this) {
+            list = Arrays.asList(reports.clone());
+        }
+
+        result.complete(new BatchReport(list, Duration.ofNanos(System.nanoTime() - startTime)));
+    }
+
+    static long totalBytes(CurseArtifact artifact) {
+        long bytes = artifact.getFile().length();
+
+        for (CurseArtifact child : artifact.getChildren()) {
+            bytes += child.getFile().length();
+        }
+
+        return bytes;
+    }
+}
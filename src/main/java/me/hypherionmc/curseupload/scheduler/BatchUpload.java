@@ -0,0 +1,195 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.scheduler;
+
+import me.hypherionmc.curseupload.CurseUploadApi;
+import me.hypherionmc.curseupload.constants.GameType;
+import me.hypherionmc.curseupload.requests.CurseArtifact;
+import me.hypherionmc.curseupload.requests.UploadResult;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author HypherionSA
+ * Uploads many {@link CurseArtifact artifacts}, possibly for different projects, with a limit on how many uploads
+ * run at the same time. The game versions are refreshed once, and the HTTP client of the {@link CurseUploadApi}
+ * is shared by all uploads in the batch
+ */
+public class BatchUpload {
+
+    private final CurseUploadApi api;
+    private final List<CurseArtifact> artifacts = new ArrayList<>();
+
+    // Limits
+    private int maxInFlight = 4;
+    private int maxPerProject = 1;
+    private @Nullable AdaptiveLimit adaptiveLimit;
+
+    public BatchUpload(CurseUploadApi api) {
+        this.api = api;
+    }
+
+    /**
+     * The maximum number of artifacts that are uploaded at the same time, across all projects
+     */
+    public BatchUpload maxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Adjust the number of artifacts that are uploaded at the same time while the batch runs, based on how CurseForge
+     * responds to the uploads of this batch. Replaces {@link #maxInFlight(int)}.
+     * While the batch runs, the limit is added as a listener to each of its artifacts
+     * @param adaptiveLimit The limit to use, or null to use the fixed maxInFlight again
+     */
+    public BatchUpload adaptiveLimit(@Nullable AdaptiveLimit adaptiveLimit) {
+        this.adaptiveLimit = adaptiveLimit;
+        return this;
+    }
+
+    /**
+     * The maximum number of artifacts that are uploaded to the same project at the same time
+     */
+    public BatchUpload maxPerProject(int maxPerProject) {
+        if (maxPerProject < 1) {
+            throw new IllegalArgumentException("maxPerProject must be at least 1");
+        }
+
+        this.maxPerProject = maxPerProject;
+        return this;
+    }
+
+    /**
+     * Add a main artifact to the batch. Its additional files are uploaded with it
+     */
+    public BatchUpload add(CurseArtifact artifact) {
+        this.artifacts.add(artifact);
+        return this;
+    }
+
+    public BatchUpload addAll(Collection<CurseArtifact> artifacts) {
+        this.artifacts.addAll(artifacts);
+        return this;
+    }
+
+    /**
+     * Upload all artifacts, and wait for them to finish
+     */
+    public BatchReport run() {
+        return runAsync().join();
+    }
+
+    /**
+     * Start uploading all artifacts on the executor of the {@link CurseUploadApi}
+     * @return A future that completes once every artifact has either been uploaded, or failed
+     */
+    public CompletableFuture<BatchReport> runAsync() {
+        final List<CurseArtifact> artifacts = new ArrayList<>(this.artifacts);
+        final AdaptiveLimit limit = this.adaptiveLimit;
+        final Batch dispatcher = new Batch(artifacts, limit);
+
+        if (limit != null) {
+            // Only learns from the responses to this batch, not from other uploads made with the same client
+            for (CurseArtifact artifact : artifacts) artifact.addListener(limit);
+            dispatcher.result.whenComplete((report, error) -> {
+                for (CurseArtifact artifact : artifacts) artifact.removeListener(limit);
+            });
+        }
+
+        CompletableFuture.runAsync(() -> {
+            refreshVersions(api, artifacts);
+            dispatcher.pump();
+        }, api.getExecutor()).exceptionally(e -> {
+            dispatcher.result.completeExceptionally(e);
+            return null;
+        });
+
+        return dispatcher.result;
+    }
+
+    /**
+     * Refresh the versions of every game used by the artifacts, once
+     */
+    static void refreshVersions(CurseUploadApi api, List<CurseArtifact> artifacts) {
+        final Set<GameType> gameTypes = EnumSet.noneOf(GameType.class);
+        for (CurseArtifact artifact : artifacts) gameTypes.add(artifact.getGameType(api));
+        for (GameType gameType : gameTypes) api.getGameVersions().refresh(gameType);
+    }
+
+    /**
+     * Starts uploads as soon as both the global and per project limits allow it
+     */
+    private final class Batch extends Dispatcher {
+        private final @Nullable AdaptiveLimit limit;
+        private final Deque<Integer> pending = new ArrayDeque<>();
+        private final Map<Long, Integer> perProject = new HashMap<>();
+
+        private Batch(List<CurseArtifact> artifacts, @Nullable AdaptiveLimit limit) {
+            super(BatchUpload.this.api, artifacts);
+            this.limit = limit;
+
+            for (int i = 0; i < artifacts.size(); i++) {
+                pending.add(i);
+            }
+        }
+
+        @Override
+        void select(int inFlight, List<Integer> toStart) {
+            final int max = limit != null ? limit.getLimit() : maxInFlight;
+            final Iterator<Integer> it = pending.iterator();
+            while (inFlight + toStart.size() < max && it.hasNext()) {
+                final int index = it.next();
+                final long projectId = artifacts.get(index).getProjectId();
+                final int running = perProject.getOrDefault(projectId, 0);
+
+                if (running >= maxPerProject) continue;
+
+                it.remove();
+                perProject.put(projectId, running + 1);
+                toStart.add(index);
+            }
+        }
+
+        @Override
+        void finished(int index, UploadResult upload) {
+            perProject.merge(artifacts.get(index).getProjectId(), -1, Integer::sum);
+        }
+    }
+}
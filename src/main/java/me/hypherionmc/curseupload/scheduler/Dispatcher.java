@@ -0,0 +1,106 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.scheduler;
+
+import me.hypherionmc.curseupload.CurseUploadApi;
+import me.hypherionmc.curseupload.errors.CurseUploadException;
+import me.hypherionmc.curseupload.requests.CurseArtifact;
+import me.hypherionmc.curseupload.requests.UploadResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @author HypherionSA
+ * Starts uploads on the executor of the {@link CurseUploadApi} as soon as the scheduler allows it, and keeps track of how
+ * many are running
+ */
+abstract class Dispatcher extends BatchRun {
+
+    private int inFlight = 0;
+
+    Dispatcher(CurseUploadApi api, List<CurseArtifact> artifacts) {
+        super(api, artifacts);
+    }
+
+    /**
+     * Called with the lock held. Add the artifacts that may be started now to toStart
+     * @param inFlight The number of uploads that are running
+     */
+    abstract void select(int inFlight, List<Integer> toStart);
+
+    /**
+     * Called with the lock held, after an upload finished and was recorded. Other outcomes recorded here must use
+     * {@link #record(int, ArtifactReport)}, the result is completed by {@link #pump()} once the lock is released
+     */
+    void finished(int index, UploadResult upload) {
+    }
+
+    final void pump() {
+        while (true) {
+            final List<Integer> toStart = new ArrayList<>();
+
+            synchronized (this) {
+                if (getRemaining() == 0) break;
+
+                select(inFlight, toStart);
+                inFlight += toStart.size();
+            }
+
+            // Started outside the lock, in case the executor runs tasks on the calling thread
+            boolean rejected = false;
+            for (int index : toStart) {
+                try {
+                    api.getExecutor().execute(() -> run(index));
+                } catch (RejectedExecutionException e) {
+                    // Failed right away, so the batch still completes. Select again, since this may have changed what can start
+                    final CurseArtifact artifact = artifacts.get(index);
+                    done(index, report(index, UploadResult.failure(artifact, new CurseUploadException("Failed to start upload of " + artifact.getFile().getName(), e)), System.nanoTime()));
+                    rejected = true;
+                }
+            }
+
+            if (!rejected) return;
+        }
+
+        // Outside the lock, so callbacks attached to the result don't run while holding it
+        finish();
+    }
+
+    private void run(int index) {
+        final long start = System.nanoTime();
+        final UploadResult upload = upload(artifacts.get(index));
+        done(index, report(index, upload, start));
+        pump();
+    }
+
+    private void done(int index, ArtifactReport report) {
+        synchronized (this) {
+            inFlight--;
+            record(index, report);
+            finished(index, report.getResult());
+        }
+    }
+}
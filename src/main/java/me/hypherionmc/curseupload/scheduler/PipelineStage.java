@@ -0,0 +1,126 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.scheduler;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author HypherionSA
+ * Live statistics of a single stage of a {@link ReleasePipeline}. The values are updated while the pipeline runs
+ */
+public final class PipelineStage {
+
+    private final String name;
+
+    // Artifacts waiting to be picked up by this stage
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder idleNanos = new LongAdder();
+    private final LongAdder stallNanos = new LongAdder();
+
+    PipelineStage(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The number of artifacts currently waiting for this stage
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * The highest number of artifacts that were waiting for this stage at the same time
+     */
+    public int getMaxQueueDepth() {
+        return maxQueued.get();
+    }
+
+    /**
+     * The number of artifacts this stage has finished with, including failures
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * Time spent working on artifacts, summed over all workers of this stage
+     */
+    public Duration getBusyTime() {
+        return Duration.ofNanos(busyNanos.sum());
+    }
+
+    /**
+     * Time spent waiting for work because nothing was queued, summed over all workers of this stage.
+     * For the transfer stage, this is time the network was not in use
+     */
+    public Duration getIdleTime() {
+        return Duration.ofNanos(idleNanos.sum());
+    }
+
+    /**
+     * Time spent waiting to hand finished artifacts to the next stage because its queue was full, summed over all
+     * workers of this stage
+     */
+    public Duration getStallTime() {
+        return Duration.ofNanos(stallNanos.sum());
+    }
+
+    void enqueued(int count) {
+        final int depth = queued.addAndGet(count);
+        maxQueued.accumulateAndGet(depth, Math::max);
+    }
+
+    void dequeued() {
+        queued.decrementAndGet();
+    }
+
+    void processed(long nanos) {
+        processed.increment();
+        busyNanos.add(nanos);
+    }
+
+    void idle(long nanos) {
+        idleNanos.add(nanos);
+    }
+
+    void stalled(long nanos) {
+        stallNanos.add(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getProcessed() + " done, " + getQueueDepth() + " queued (max " + getMaxQueueDepth() + "), busy " + getBusyTime().toMillis()
+                + "ms, idle " + getIdleTime().toMillis() + "ms, stalled " + getStallTime().toMillis() + "ms";
+    }
+}
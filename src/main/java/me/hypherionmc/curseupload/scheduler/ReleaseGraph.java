@@ -0,0 +1,277 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.scheduler;
+
+import me.hypherionmc.curseupload.CurseUploadApi;
+import me.hypherionmc.curseupload.constants.CurseRelationType;
+import me.hypherionmc.curseupload.requests.CurseArtifact;
+import me.hypherionmc.curseupload.requests.UploadResult;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * @author HypherionSA
+ * Uploads {@link CurseArtifact artifacts} of several projects in dependency order. An artifact is uploaded once
+ * everything it depends on has been uploaded, and artifacts that don't depend on each other are uploaded in parallel.
+ * <p>
+ * Dependencies come from two places. An artifact that declares a {@link CurseArtifact#requirement(String) required}
+ * or {@link CurseArtifact#embedded(String) embedded} relation on a slug depends on the artifact that was added with that
+ * slug. Relations to projects that are not part of the graph are ignored. Other dependencies can be added with
+ * {@link #dependsOn(CurseArtifact, CurseArtifact)}.
+ * <p>
+ * When an artifact fails, everything that depends on it, directly or not, is cancelled right away
+ */
+public class ReleaseGraph {
+
+    private final CurseUploadApi api;
+
+    // Nodes in the order they were added, and the slug of their project, if known
+    private final List<CurseArtifact> artifacts = new ArrayList<>();
+    private final Map<String, CurseArtifact> bySlug = new HashMap<>();
+
+    // Explicit edges, from the dependent to its prerequisites
+    private final Map<CurseArtifact, List<CurseArtifact>> explicit = new IdentityHashMap<>();
+
+    private int maxInFlight = 4;
+
+    public ReleaseGraph(CurseUploadApi api) {
+        this.api = api;
+    }
+
+    /**
+     * The maximum number of artifacts that are uploaded at the same time
+     */
+    public ReleaseGraph maxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Add a main artifact that other artifacts can only depend on through {@link #dependsOn(CurseArtifact, CurseArtifact)}
+     */
+    public ReleaseGraph add(CurseArtifact artifact) {
+        if (artifacts.contains(artifact)) {
+            throw new IllegalArgumentException(artifact.getFile().getName() + " is already part of the graph");
+        }
+
+        this.artifacts.add(artifact);
+        return this;
+    }
+
+    /**
+     * Add a main artifact, and the slug of the project it is uploaded to. Artifacts with a required or embedded
+     * relation on this slug are uploaded after it
+     */
+    public ReleaseGraph add(CurseArtifact artifact, String slug) {
+        final String key = slug.toLowerCase(Locale.ROOT);
+        if (bySlug.containsKey(key)) {
+            throw new IllegalArgumentException("An artifact for " + slug + " is already part of the graph");
+        }
+
+        add(artifact);
+        this.bySlug.put(key, artifact);
+        return this;
+    }
+
+    /**
+     * Make sure an artifact is only uploaded after another one was uploaded successfully. Both must be added to the graph
+     */
+    public ReleaseGraph dependsOn(CurseArtifact dependent, CurseArtifact prerequisite) {
+        if (dependent == prerequisite) {
+            throw new IllegalArgumentException("An artifact can not depend on itself");
+        }
+
+        this.explicit.computeIfAbsent(dependent, k -> new ArrayList<>()).add(prerequisite);
+        return this;
+    }
+
+    /**
+     * Upload all artifacts, and wait for them to finish
+     */
+    public BatchReport run() {
+        return runAsync().join();
+    }
+
+    /**
+     * Start uploading all artifacts on the executor of the {@link CurseUploadApi}
+     * @return A future that completes once every artifact has been uploaded, has failed, or was cancelled
+     * @throws IllegalArgumentException If the dependencies contain a cycle, or refer to artifacts outside the graph
+     */
+    public CompletableFuture<BatchReport> runAsync() {
+        final Scheduler scheduler = new Scheduler(new ArrayList<>(artifacts));
+
+        CompletableFuture.runAsync(() -> {
+            BatchUpload.refreshVersions(api, scheduler.artifacts);
+            scheduler.pump();
+        }, api.getExecutor()).exceptionally(e -> {
+            scheduler.result.completeExceptionally(e);
+            return null;
+        });
+
+        return scheduler.result;
+    }
+
+    private final class Scheduler extends Dispatcher {
+
+        // For every node, the nodes that depend on it, and how many of its own prerequisites are not uploaded yet
+        private final int[][] dependents;
+        private final int[] waitingFor;
+
+        private final Deque<Integer> ready = new ArrayDeque<>();
+
+        private Scheduler(List<CurseArtifact> artifacts) {
+            super(ReleaseGraph.this.api, artifacts);
+            this.waitingFor = new int[artifacts.size()];
+
+            final Map<CurseArtifact, Integer> indexes = new IdentityHashMap<>();
+            for (int i = 0; i < artifacts.size(); i++) {
+                indexes.put(artifacts.get(i), i);
+            }
+
+            final List<List<Integer>> edges = new ArrayList<>();
+            for (int i = 0; i < artifacts.size(); i++) {
+                edges.add(new ArrayList<>());
+            }
+
+            for (int i = 0; i < artifacts.size(); i++) {
+                final CurseArtifact artifact = artifacts.get(i);
+                final List<Integer> prerequisites = new ArrayList<>();
+
+                for (Map.Entry<String, CurseRelationType> relation : artifact.getRelations().entrySet()) {
+                    if (relation.getValue() != CurseRelationType.REQUIRED && relation.getValue() != CurseRelationType.EMBEDDED) continue;
+
+                    final CurseArtifact prerequisite = bySlug.get(relation.getKey().toLowerCase(Locale.ROOT));
+                    if (prerequisite != null && prerequisite != artifact) prerequisites.add(indexes.get(prerequisite));
+                }
+
+                for (CurseArtifact prerequisite : explicit.getOrDefault(artifact, Collections.emptyList())) {
+                    final Integer index = indexes.get(prerequisite);
+                    if (index == null) {
+                        throw new IllegalArgumentException(prerequisite.getFile().getName() + " is not part of the graph");
+                    }
+                    prerequisites.add(index);
+                }
+
+                for (int prerequisite : prerequisites.stream().distinct().collect(Collectors.toList())) {
+                    edges.get(prerequisite).add(i);
+                    waitingFor[i]++;
+                }
+            }
+
+            for (CurseArtifact dependent : explicit.keySet()) {
+                if (!indexes.containsKey(dependent)) {
+                    throw new IllegalArgumentException(dependent.getFile().getName() + " is not part of the graph");
+                }
+            }
+
+            this.dependents = new int[artifacts.size()][];
+            for (int i = 0; i < artifacts.size(); i++) {
+                this.dependents[i] = edges.get(i).stream().mapToInt(Integer::intValue).toArray();
+                if (waitingFor[i] == 0) ready.add(i);
+            }
+
+            checkForCycles();
+        }
+
+        /**
+         * Walk the graph in dependency order. Nodes that are never reached are part of, or depend on, a cycle
+         */
+        private void checkForCycles() {
+            final int[] waiting = waitingFor.clone();
+            final Deque<Integer> queue = new ArrayDeque<>(ready);
+            int visited = 0;
+
+            while (!queue.isEmpty()) {
+                final int node = queue.poll();
+                visited++;
+
+                for (int dependent : dependents[node]) {
+                    if (--waiting[dependent] == 0) queue.add(dependent);
+                }
+            }
+
+            if (visited == artifacts.size()) return;
+
+            final List<String> stuck = new ArrayList<>();
+            for (int i = 0; i < artifacts.size(); i++) {
+                if (waiting[i] > 0) stuck.add(artifacts.get(i).getFile().getName());
+            }
+
+            throw new IllegalArgumentException("The dependencies of these artifacts contain a cycle: " + String.join(", ", stuck));
+        }
+
+        @Override
+        void select(int inFlight, List<Integer> toStart) {
+            while (inFlight + toStart.size() < maxInFlight && !ready.isEmpty()) {
+                toStart.add(ready.poll());
+            }
+        }
+
+        @Override
+        void finished(int index, UploadResult upload) {
+            if (upload.isSuccess()) {
+                for (int dependent : dependents[index]) {
+                    if (--waitingFor[dependent] == 0) ready.add(dependent);
+                }
+            } else {
+                cancelDependents(index);
+            }
+        }
+
+        /**
+         * Cancel everything that depends on a failed artifact, directly or not. Nothing that is cancelled has started,
+         * since it was still waiting for the failed artifact
+         */
+        private void cancelDependents(int failed) {
+            final String reason = "Cancelled, because " + artifacts.get(failed).getFile().getName() + " failed to upload";
+            final Deque<Integer> queue = new ArrayDeque<>();
+            for (int dependent : dependents[failed]) queue.add(dependent);
+
+            while (!queue.isEmpty()) {
+                final int node = queue.poll();
+                if (isComplete(node)) continue;
+
+                final CurseArtifact artifact = artifacts.get(node);
+                record(node, new ArtifactReport(artifact, UploadResult.cancelled(artifact, reason), 0, Duration.ZERO));
+
+                for (int dependent : dependents[node]) queue.add(dependent);
+            }
+        }
+    }
+}
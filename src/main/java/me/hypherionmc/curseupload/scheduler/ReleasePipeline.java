@@ -0,0 +1,374 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.scheduler;
+
+import me.hypherionmc.curseupload.CurseUploadApi;
+import me.hypherionmc.curseupload.errors.CurseUploadException;
+import me.hypherionmc.curseupload.requests.CurseArtifact;
+import me.hypherionmc.curseupload.requests.UploadPlan;
+import me.hypherionmc.curseupload.requests.UploadResult;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author HypherionSA
+ * Uploads many {@link CurseArtifact artifacts} in two stages. The prepare stage validates the next artifacts, resolves
+ * their versions, encodes their metadata and hashes them for the upload journal, while the transfer stage uploads
+ * the artifacts that are already prepared. The stages are connected by a bounded queue, so preparation never runs
+ * too far ahead, and the network does not sit idle between files.
+ * <p>
+ * All workers run on the executor of the {@link CurseUploadApi}. When it can't run them all at the same time, a
+ * transfer worker prepares artifacts itself while nothing is queued, and a preparer uploads its artifact itself while
+ * no transfer worker is running, so the pipeline still completes, only with less overlap. A pipeline can only be run once
+ */
+public class ReleasePipeline {
+
+    private final CurseUploadApi api;
+    private final List<CurseArtifact> artifacts = new ArrayList<>();
+
+    // Number of workers per stage, and how many prepared artifacts may wait for the transfer stage
+    private int preparers = 1;
+    private int transfers = 1;
+    private int queueCapacity = 2;
+
+    private final PipelineStage prepareStage = new PipelineStage("prepare");
+    private final PipelineStage transferStage = new PipelineStage("transfer");
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    public ReleasePipeline(CurseUploadApi api) {
+        this.api = api;
+    }
+
+    /**
+     * The number of artifacts that are prepared at the same time
+     */
+    public ReleasePipeline preparers(int preparers) {
+        if (preparers < 1) {
+            throw new IllegalArgumentException("preparers must be at least 1");
+        }
+
+        this.preparers = preparers;
+        return this;
+    }
+
+    /**
+     * The number of artifacts that are uploaded at the same time
+     */
+    public ReleasePipeline transfers(int transfers) {
+        if (transfers < 1) {
+            throw new IllegalArgumentException("transfers must be at least 1");
+        }
+
+        this.transfers = transfers;
+        return this;
+    }
+
+    /**
+     * The number of prepared artifacts that can wait for the transfer stage. Preparation pauses while the queue is full
+     */
+    public ReleasePipeline queueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Add a main artifact to the pipeline. Its additional files are uploaded with it
+     */
+    public ReleasePipeline add(CurseArtifact artifact) {
+        this.artifacts.add(artifact);
+        return this;
+    }
+
+    public ReleasePipeline addAll(Collection<CurseArtifact> artifacts) {
+        this.artifacts.addAll(artifacts);
+        return this;
+    }
+
+    /**
+     * Statistics of the prepare stage. Its queue holds the artifacts that were not picked up yet
+     */
+    public PipelineStage getPrepareStage() {
+        return prepareStage;
+    }
+
+    /**
+     * Statistics of the transfer stage. Its queue holds the prepared artifacts waiting to be uploaded
+     */
+    public PipelineStage getTransferStage() {
+        return transferStage;
+    }
+
+    public List<PipelineStage> getStages() {
+        return Arrays.asList(prepareStage, transferStage);
+    }
+
+    /**
+     * Upload all artifacts, and wait for them to finish
+     */
+    public BatchReport run() {
+        return runAsync().join();
+    }
+
+    /**
+     * Start the pipeline on the executor of the {@link CurseUploadApi}
+     * @return A future that completes once every artifact has either been uploaded, or failed
+     */
+    public CompletableFuture<BatchReport> runAsync() {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("A pipeline can only be run once");
+        }
+
+        final Run run = new Run(new ArrayList<>(artifacts));
+
+        CompletableFuture.runAsync(() -> {
+            BatchUpload.refreshVersions(api, run.artifacts);
+            run.start();
+        }, api.getExecutor()).exceptionally(e -> {
+            run.result.completeExceptionally(e);
+            return null;
+        });
+
+        return run.result;
+    }
+
+    // How long an idle worker waits before it checks again if there is anything left to do
+    private static final long POLL_MILLIS = 50;
+
+    // A prepared artifact, waiting for the transfer stage
+    private static final class Prepared {
+        private final int index;
+        private final UploadPlan plan;
+        private final long startTime;
+
+        private Prepared(int index, UploadPlan plan, long startTime) {
+            this.index = index;
+            this.plan = plan;
+            this.startTime = startTime;
+        }
+    }
+
+    private final class Run extends BatchRun {
+        private final BlockingQueue<Prepared> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicInteger next = new AtomicInteger();
+
+        // Artifacts that were claimed for preparation, but are not queued or completed yet
+        private final AtomicInteger preparing = new AtomicInteger();
+
+        // Transfer workers that are running right now
+        private final AtomicInteger transferring = new AtomicInteger();
+
+        private Run(List<CurseArtifact> artifacts) {
+            super(ReleasePipeline.this.api, artifacts);
+        }
+
+        private void start() {
+            if (artifacts.isEmpty()) {
+                finish();
+                return;
+            }
+
+            prepareStage.enqueued(artifacts.size());
+
+            for (int i = 0; i < transfers; i++) {
+                api.getExecutor().execute(this::transferWorker);
+            }
+
+            for (int i = 0; i < preparers; i++) {
+                api.getExecutor().execute(this::prepareWorker);
+            }
+        }
+
+        private void prepareWorker() {
+            int index;
+            while ((index = claim()) >= 0) {
+                try {
+                    final Prepared prepared = prepare(index);
+                    if (prepared != null) enqueue(prepared);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failUnprepared(new CurseUploadException("Interrupted while preparing uploads", e));
+                    return;
+                } finally {
+                    preparing.decrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * Hand a prepared artifact to the transfer stage. When no transfer worker is running, because the executor
+         * has no thread left for it, the artifact is uploaded on this thread instead
+         */
+        private void enqueue(Prepared prepared) throws InterruptedException {
+            // Counted before it is queued, so the transfer stage never sees a negative depth
+            transferStage.enqueued(1);
+
+            final long waitStart = System.nanoTime();
+            try {
+                while (!queue.offer(prepared, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (transferring.get() == 0) {
+                        transferStage.dequeued();
+                        transfer(prepared);
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                transferStage.dequeued();
+                complete(prepared.index, UploadResult.failure(prepared.plan.getArtifact(), new CurseUploadException("Interrupted while uploading", e)), prepared.startTime);
+                throw e;
+            } finally {
+                prepareStage.stalled(System.nanoTime() - waitStart);
+            }
+        }
+
+        private void transferWorker() {
+            transferring.incrementAndGet();
+
+            try {
+                while (true) {
+                    Prepared prepared = queue.poll();
+
+                    if (prepared == null) {
+                        // Nothing is prepared yet. Prepare the next artifact on this thread, so the pipeline also
+                        // completes when the executor can't run the preparers at the same time
+                        final int index = claim();
+                        if (index >= 0) {
+                            try {
+                                prepared = prepare(index);
+                            } finally {
+                                preparing.decrementAndGet();
+                            }
+
+                            if (prepared != null) transfer(prepared);
+                            continue;
+                        }
+
+                        // Read in this order, so an artifact that is still being prepared is never missed
+                        if (preparing.get() == 0 && queue.isEmpty()) return;
+
+                        final long waitStart = System.nanoTime();
+                        prepared = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        transferStage.idle(System.nanoTime() - waitStart);
+                        if (prepared == null) continue;
+                    }
+
+                    transferStage.dequeued();
+                    transfer(prepared);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                // Anything left in the queue can no longer be uploaded by this worker
+                final List<Prepared> left = new ArrayList<>();
+                queue.drainTo(left);
+                for (Prepared prepared : left) {
+                    transferStage.dequeued();
+                    complete(prepared.index, UploadResult.failure(prepared.plan.getArtifact(), new CurseUploadException("Interrupted while uploading", e)), prepared.startTime);
+                }
+            } finally {
+                transferring.decrementAndGet();
+            }
+        }
+
+        /**
+         * Claim the next artifact to prepare. The caller must decrement {@link #preparing} once it is queued or completed
+         * @return The index of the artifact, or -1 if every artifact was claimed already
+         */
+        private int claim() {
+            preparing.incrementAndGet();
+
+            final int index = next.getAndIncrement();
+            if (index >= artifacts.size()) {
+                preparing.decrementAndGet();
+                return -1;
+            }
+
+            prepareStage.dequeued();
+            return index;
+        }
+
+        /**
+         * @return The prepared artifact, or null if it failed, in which case it was completed already
+         */
+        private @Nullable Prepared prepare(int index) {
+            final CurseArtifact artifact = artifacts.get(index);
+            final long start = System.nanoTime();
+
+            try {
+                final UploadPlan plan = artifact.prepare(api);
+
+                // Hash ahead of time, so the transfer stage only has to look it up
+                if (api.getJournal() != null && !api.isDebug()) plan.getHash();
+                return new Prepared(index, plan, start);
+            } catch (FileNotFoundException e) {
+                fail(index, start, new CurseUploadException("Failed to find upload artifact " + artifact.getFile(), e));
+            } catch (IOException e) {
+                fail(index, start, new CurseUploadException("Failed to hash upload artifact " + artifact.getFile(), e));
+            } catch (RuntimeException e) {
+                fail(index, start, e);
+            } catch (Throwable e) {
+                // Still counted, otherwise the pipeline would never complete
+                fail(index, start, new CurseUploadException("Failed to prepare upload artifact " + artifact.getFile(), e));
+            } finally {
+                prepareStage.processed(System.nanoTime() - start);
+            }
+
+            return null;
+        }
+
+        private void transfer(Prepared prepared) {
+            final long start = System.nanoTime();
+            final UploadResult upload = upload(prepared.plan);
+            transferStage.processed(System.nanoTime() - start);
+            complete(prepared.index, upload, prepared.startTime);
+        }
+
+        private void failUnprepared(RuntimeException error) {
+            int index;
+            while ((index = next.getAndIncrement()) < artifacts.size()) {
+                prepareStage.dequeued();
+                fail(index, System.nanoTime(), error);
+            }
+        }
+
+        private void fail(int index, long startTime, RuntimeException error) {
+            complete(index, UploadResult.failure(artifacts.get(index), error), startTime);
+        }
+    }
+}
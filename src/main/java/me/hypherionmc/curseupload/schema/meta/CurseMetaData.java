@@ -26,9 +26,6 @@ package me.hypherionmc.curseupload.schema.meta;
 import me.hypherionmc.curseupload.constants.CurseChangelogType;
 import me.hypherionmc.curseupload.constants.CurseReleaseType;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * @author HypherionSA
  * A POJO object that represents the required MetaData that has to be sent
@@ -40,7 +37,7 @@ public class CurseMetaData {
     public CurseChangelogType changelogType = CurseChangelogType.TEXT;
     public String displayName = null;
     public Long parentFileID = null;
-    public Set<Long> gameVersions = new HashSet<>();
+    public long[] gameVersions = new long[0];
     public CurseReleaseType releaseType = CurseReleaseType.RELEASE;
     public ProjectRelations relations = null;
     public boolean isMarkedForManualRelease = false;
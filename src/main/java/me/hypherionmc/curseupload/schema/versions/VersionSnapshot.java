@@ -0,0 +1,52 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.schema.versions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author HypherionSA
+ * A POJO object that represents the game versions of a single game, as they are stored on disk between runs
+ */
+public class VersionSnapshot {
+
+    // Validators of the version types endpoint, used for conditional requests
+    public String typesEtag;
+    public String typesLastModified;
+
+    // Validators of the versions endpoint, used for conditional requests
+    public String versionsEtag;
+    public String versionsLastModified;
+
+    // The version types that were kept when the snapshot was made
+    public long[] validTypes = new long[0];
+
+    // Lowercase version name to version ID
+    public Map<String, Long> versions = new HashMap<>();
+
+    // Lowercase version slug to version ID
+    public Map<String, Long> slugs = new HashMap<>();
+
+}
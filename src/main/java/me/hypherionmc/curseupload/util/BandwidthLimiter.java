@@ -0,0 +1,168 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author HypherionSA
+ * Limits the number of bytes per second sent by uploads, using a token bucket.
+ * Uploads ask for permission before every chunk of {@link MultipartFileEntity#CHUNK_SIZE} bytes. Requests are granted in
+ * the order they arrive, so concurrent uploads take turns and share the available bandwidth evenly instead of one upload
+ * starving the others.
+ * A single limiter can be shared by several clients. {@link #global()} is applied to every upload
+ */
+public class BandwidthLimiter {
+
+    private static final BandwidthLimiter GLOBAL = new BandwidthLimiter(0);
+
+    // Fair, so waiting uploads are served in order
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    // Bytes per second, and the number of bytes that may be sent at once after being idle. 0 means unlimited
+    private volatile long bytesPerSecond;
+    private long burst;
+
+    // Available bytes. Negative when uploads have reserved more than is available, and are waiting for it
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder throttledNanos = new LongAdder();
+
+    /**
+     * @param bytesPerSecond The maximum number of bytes sent per second, or 0 for no limit
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        setRate(bytesPerSecond);
+    }
+
+    /**
+     * The limiter shared by all clients. It doesn't limit anything until {@link #setRate(long)} is called
+     */
+    public static BandwidthLimiter global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Change the limit. Uploads that are already running use the new limit from their next chunk
+     * @param bytesPerSecond The maximum number of bytes sent per second, or 0 for no limit
+     */
+    public void setRate(long bytesPerSecond) {
+        setRate(bytesPerSecond, bytesPerSecond);
+    }
+
+    /**
+     * Change the limit
+     * @param bytesPerSecond The maximum number of bytes sent per second, or 0 for no limit
+     * @param burst The number of bytes that may be sent at full speed after the limiter was idle
+     */
+    public void setRate(long bytesPerSecond, long burst) {
+        if (bytesPerSecond < 0 || burst < 0) {
+            throw new IllegalArgumentException("Bandwidth limits cannot be negative");
+        }
+
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            this.bytesPerSecond = bytesPerSecond;
+            this.burst = Math.max(burst, MultipartFileEntity.CHUNK_SIZE);
+            this.tokens = Math.min(tokens, this.burst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRate() {
+        return bytesPerSecond;
+    }
+
+    public boolean isLimited() {
+        return bytesPerSecond > 0;
+    }
+
+    /**
+     * The total number of bytes that passed through this limiter
+     */
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * The total time uploads spent waiting for this limiter, in nanoseconds. Uploads waiting at the same time are counted separately
+     */
+    public long getThrottledTime() {
+        return throttledNanos.sum();
+    }
+
+    /**
+     * INTERNAL. Wait until the given number of bytes may be sent.
+     * The bytes are reserved right away, so the next caller waits for them as well
+     * @throws InterruptedIOException When the thread is interrupted while waiting
+     */
+    public void acquire(int bytes) throws IOException {
+        bytesSent.add(bytes);
+        if (bytesPerSecond <= 0) return;
+
+        final long wait;
+        lock.lock();
+        try {
+            final long rate = bytesPerSecond;
+            if (rate <= 0) return;
+
+            refill(System.nanoTime());
+            tokens -= bytes;
+            wait = tokens >= 0 ? 0 : (long) (-tokens * 1_000_000_000L / rate);
+        } finally {
+            lock.unlock();
+        }
+
+        if (wait <= 0) return;
+        throttledNanos.add(wait);
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+        }
+    }
+
+    private void refill(long now) {
+        if (bytesPerSecond > 0) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * (double) bytesPerSecond / 1_000_000_000L);
+        }
+
+        lastRefill = now;
+    }
+
+    @Override
+    public String toString() {
+        return "BandwidthLimiter " + (isLimited() ? bytesPerSecond + " B/s" : "unlimited");
+    }
+}
@@ -25,14 +25,31 @@ package me.hypherionmc.curseupload.util;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import me.hypherionmc.curseupload.schema.meta.CurseMetaData;
+import me.hypherionmc.curseupload.schema.meta.ProjectRelations;
+import me.hypherionmc.curseupload.schema.meta.Relation;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.zip.GZIPInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author HypherionSA
@@ -40,22 +57,170 @@ import java.util.zip.GZIPInputStream;
  */
 public class HTTPUtils {
 
-    public static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    // Used for responses and debug output. Upload metadata is written with the compact MetaDataCodec instead
+    public static final Gson gson = new GsonBuilder()
+            .setPrettyPrinting()
+            .registerTypeAdapter(CurseMetaData.class, MetaDataCodec.METADATA)
+            .registerTypeAdapter(ProjectRelations.class, MetaDataCodec.PROJECT_RELATIONS)
+            .registerTypeAdapter(Relation.class, MetaDataCodec.RELATION)
+            .create();
+
+    public static final String USER_AGENT = "CurseUpload4J";
+
+    // Connection pool defaults. Uploads and version fetches all go to a handful of hosts
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_MAX_PER_ROUTE = 10;
+
+    // How long an unused connection is kept around before it is closed
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+    // Stalled connections fail with a timeout, so they can be retried
+    private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+    private static final int SOCKET_TIMEOUT_MILLIS = 300_000;
+
+    /**
+     * Create a new connection pool, configured with the default limits
+     */
+    public static PoolingHttpClientConnectionManager createConnectionManager() {
+        final PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        manager.setMaxTotal(DEFAULT_MAX_CONNECTIONS);
+        manager.setDefaultMaxPerRoute(DEFAULT_MAX_PER_ROUTE);
+        manager.setValidateAfterInactivity(2000);
+        return manager;
+    }
+
+    /**
+     * Create a keep-alive HTTP client backed by the supplied connection pool.
+     * Closing the returned client also shuts down the pool
+     * @param manager The connection pool the client will lease connections from
+     */
+    public static CloseableHttpClient createClient(PoolingHttpClientConnectionManager manager) {
+        return HttpClientBuilder.create()
+                .setConnectionManager(manager)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setCookieSpec(CookieSpecs.STANDARD)
+                        .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                        .setSocketTimeout(SOCKET_TIMEOUT_MILLIS)
+                        .build())
+                .setUserAgent(USER_AGENT)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
 
     /**
-     * Make a GET request to the CurseForge API
+     * Read the Retry-After header of a response. Both the delay in seconds and the HTTP date forms are supported
+     * @return The requested delay in milliseconds, or -1 if the header is missing or invalid
+     */
+    public static long parseRetryAfter(HttpResponse response) {
+        final Header header = response.getFirstHeader("Retry-After");
+        if (header == null) return -1;
+
+        final String value = header.getValue().trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException ignored) {}
+
+        final Date date = DateUtils.parseDate(value);
+        if (date == null) return -1;
+
+        return Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+
+    /**
+     * Make a GET request to the CurseForge API.
+     * Closing the returned reader releases the connection back to the pool
+     * @param client The HTTP client to use for the request
      * @param url The API Endpoint that will be called
      */
-    public static Reader fetch(String url) throws IOException {
-        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        connection.addRequestProperty("User-Agent", "CurseUpload4J");
-        connection.setRequestProperty("Accept-Encoding", "gzip");
+    public static Reader fetch(HttpClient client, String url) throws IOException {
+        return fetchIfModified(client, url, null, null).getBody();
+    }
 
-        if (connection.getContentEncoding() != null && connection.getContentEncoding().equals("gzip")) {
-            return new InputStreamReader(new GZIPInputStream(connection.getInputStream()));
+    /**
+     * Make a conditional GET request to the CurseForge API. When the resource did not change since it was last fetched,
+     * the server only answers with a 304 and no body is transferred.
+     * Closing the returned response releases the connection back to the pool
+     * @param client The HTTP client to use for the request
+     * @param url The API Endpoint that will be called
+     * @param etag The ETag of the copy we already have, or null
+     * @param lastModified The Last-Modified date of the copy we already have, or null
+     */
+    public static ConditionalResponse fetchIfModified(HttpClient client, String url, @Nullable String etag, @Nullable String lastModified) throws IOException {
+        final HttpGet request = new HttpGet(url);
+        if (etag != null) request.addHeader("If-None-Match", etag);
+        if (lastModified != null) request.addHeader("If-Modified-Since", lastModified);
+
+        final HttpResponse response = client.execute(request);
+        final HttpEntity entity = response.getEntity();
+        final int status = response.getStatusLine().getStatusCode();
+
+        if (status == 304) {
+            EntityUtils.consumeQuietly(entity);
+            return new ConditionalResponse(null, etag, lastModified);
+        }
+
+        if (status != 200 || entity == null) {
+            EntityUtils.consumeQuietly(entity);
+            throw new IOException("Request to " + url + " failed with status " + status);
+        }
+
+        final Header newEtag = response.getFirstHeader("ETag");
+        final Header newLastModified = response.getFirstHeader("Last-Modified");
+
+        // Content compression is handled by the client, so the stream is already decoded here
+        return new ConditionalResponse(
+                new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8),
+                newEtag == null ? null : newEtag.getValue(),
+                newLastModified == null ? null : newLastModified.getValue()
+        );
+    }
+
+    /**
+     * The result of a {@link #fetchIfModified conditional request}
+     */
+    public static class ConditionalResponse implements Closeable {
+        private final @Nullable Reader body;
+        private final @Nullable String etag;
+        private final @Nullable String lastModified;
+
+        private ConditionalResponse(@Nullable Reader body, @Nullable String etag, @Nullable String lastModified) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Check if the server answered with 304, meaning our copy is still up to date
+         */
+        public boolean isNotModified() {
+            return body == null;
+        }
+
+        /**
+         * The response body. Only available when the resource was modified
+         */
+        public Reader getBody() {
+            if (body == null) {
+                throw new IllegalStateException("Resource was not modified, no body was sent");
+            }
+
+            return body;
         }
 
-        return new InputStreamReader(connection.getInputStream());
+        public @Nullable String getEtag() {
+            return etag;
+        }
+
+        public @Nullable String getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body != null) body.close();
+        }
     }
 
 }
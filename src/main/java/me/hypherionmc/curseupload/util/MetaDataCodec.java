@@ -0,0 +1,242 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.util;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import gnu.trove.list.array.TLongArrayList;
+import me.hypherionmc.curseupload.constants.CurseChangelogType;
+import me.hypherionmc.curseupload.constants.CurseRelationType;
+import me.hypherionmc.curseupload.constants.CurseReleaseType;
+import me.hypherionmc.curseupload.schema.meta.CurseMetaData;
+import me.hypherionmc.curseupload.schema.meta.ProjectRelations;
+import me.hypherionmc.curseupload.schema.meta.Relation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author HypherionSA
+ * Hand written JSON adapters for the upload metadata. Fields are written in a fixed order without reflection,
+ * and null values are left out, which matches what Gson would produce for the same objects.
+ * <p>
+ * {@link #encode(CurseMetaData)} writes compact UTF-8 JSON for the upload request. The adapters are also registered
+ * on {@link HTTPUtils#gson}, so debug output shows exactly what would be sent, just pretty printed
+ */
+public final class MetaDataCodec {
+
+    public static final TypeAdapter<Relation> RELATION = new RelationAdapter();
+    public static final TypeAdapter<ProjectRelations> PROJECT_RELATIONS = new ProjectRelationsAdapter();
+    public static final TypeAdapter<CurseMetaData> METADATA = new CurseMetaDataAdapter();
+
+    private MetaDataCodec() {}
+
+    /**
+     * Serialize upload metadata to compact JSON
+     * @return The UTF-8 encoded JSON
+     */
+    public static byte[] encode(CurseMetaData metaData) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            METADATA.write(writer, metaData);
+        } catch (IOException e) {
+            // Never thrown when writing to memory
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static final class CurseMetaDataAdapter extends TypeAdapter<CurseMetaData> {
+        @Override
+        public void write(JsonWriter out, CurseMetaData value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if (value.changelog != null) out.name("changelog").value(value.changelog);
+            if (value.changelogType != null) out.name("changelogType").value(value.changelogType.toString());
+            if (value.displayName != null) out.name("displayName").value(value.displayName);
+            if (value.parentFileID != null) out.name("parentFileID").value(value.parentFileID.longValue());
+
+            if (value.gameVersions != null) {
+                out.name("gameVersions").beginArray();
+                for (long id : value.gameVersions) out.value(id);
+                out.endArray();
+            }
+
+            if (value.releaseType != null) out.name("releaseType").value(value.releaseType.toString());
+
+            if (value.relations != null) {
+                out.name("relations");
+                PROJECT_RELATIONS.write(out, value.relations);
+            }
+
+            out.name("isMarkedForManualRelease").value(value.isMarkedForManualRelease);
+            out.endObject();
+        }
+
+        @Override
+        public CurseMetaData read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            final CurseMetaData value = new CurseMetaData();
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+
+                switch (name) {
+                    case "changelog": value.changelog = in.nextString(); break;
+                    case "changelogType": value.changelogType = find(CurseChangelogType.values(), in.nextString()); break;
+                    case "displayName": value.displayName = in.nextString(); break;
+                    case "parentFileID": value.parentFileID = in.nextLong(); break;
+                    case "gameVersions":
+                        final TLongArrayList ids = new TLongArrayList();
+                        in.beginArray();
+                        while (in.hasNext()) ids.add(in.nextLong());
+                        in.endArray();
+                        value.gameVersions = ids.toArray();
+                        break;
+                    case "releaseType": value.releaseType = find(CurseReleaseType.values(), in.nextString()); break;
+                    case "relations": value.relations = PROJECT_RELATIONS.read(in); break;
+                    case "isMarkedForManualRelease": value.isMarkedForManualRelease = in.nextBoolean(); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static final class ProjectRelationsAdapter extends TypeAdapter<ProjectRelations> {
+        @Override
+        public void write(JsonWriter out, ProjectRelations value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if (value.projects != null) {
+                out.name("projects").beginArray();
+                for (Relation relation : value.projects) RELATION.write(out, relation);
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public ProjectRelations read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            final ProjectRelations value = new ProjectRelations();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("projects") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        final Relation relation = RELATION.read(in);
+                        if (relation != null) value.projects.add(relation);
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static final class RelationAdapter extends TypeAdapter<Relation> {
+        @Override
+        public void write(JsonWriter out, Relation value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if (value.slug != null) out.name("slug").value(value.slug);
+            if (value.type != null) out.name("type").value(value.type.toString());
+            out.endObject();
+        }
+
+        @Override
+        public Relation read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            String slug = null;
+            CurseRelationType type = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+
+                switch (name) {
+                    case "slug": slug = in.nextString(); break;
+                    case "type": type = find(CurseRelationType.values(), in.nextString()); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return new Relation(slug, type);
+        }
+    }
+
+    // The enums serialize to their toString() value
+    private static <T extends Enum<T>> T find(T[] values, String name) {
+        for (T value : values) {
+            if (value.toString().equals(name)) return value;
+        }
+
+        throw new JsonParseException("Unknown value " + name);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.util;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author HypherionSA
+ * A multipart/form-data body containing the upload metadata and a single file.
+ * The metadata is written from pre-encoded bytes, and the file is streamed from disk
+ * in fixed size chunks with {@link FileChannel#transferTo}, so memory use stays the same no matter how big the file is.
+ * The entity is repeatable. Every call to {@link #writeTo(OutputStream)} reads the file again.
+ * Optional {@link BandwidthLimiter}s are asked for permission before every chunk is written
+ */
+public class MultipartFileEntity extends AbstractHttpEntity {
+
+    // The file is sent in chunks of this size
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    // Returned by getWrittenAt() until the whole body was written. nanoTime() can be 0 or negative, but never this
+    public static final long NOT_WRITTEN = Long.MIN_VALUE;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final char[] BOUNDARY_CHARS = "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private final File file;
+    private final long fileLength;
+
+    // Everything before the file contents, and everything after it
+    private final byte[] head;
+    private final byte[] tail;
+
+    // Receives the total number of bytes written after every chunk
+    private final @Nullable ProgressCallback progress;
+
+    // Limiters every chunk has to pass through, in order
+    private final BandwidthLimiter[] limiters;
+
+    // System.nanoTime() after the last write, used to tell transfer time apart from the time the server takes to respond
+    private volatile long writtenAt = NOT_WRITTEN;
+
+    /**
+     * @param metadata The UTF-8 encoded JSON metadata
+     * @param file The file to upload
+     */
+    public MultipartFileEntity(byte[] metadata, File file) {
+        this(metadata, file, null);
+    }
+
+    /**
+     * @param metadata The UTF-8 encoded JSON metadata
+     * @param file The file to upload
+     * @param progress Called with the total number of bytes written so far, after every chunk
+     */
+    public MultipartFileEntity(byte[] metadata, File file, @Nullable ProgressCallback progress) {
+        this(metadata, file, progress, new BandwidthLimiter[0]);
+    }
+
+    /**
+     * @param metadata The UTF-8 encoded JSON metadata
+     * @param file The file to upload
+     * @param progress Called with the total number of bytes written so far, after every chunk
+     * @param limiters Limiters that are asked for permission before every chunk is written
+     */
+    public MultipartFileEntity(byte[] metadata, File file, @Nullable ProgressCallback progress, BandwidthLimiter... limiters) {
+        this.file = file;
+        this.progress = progress;
+        this.limiters = limiters.clone();
+        this.fileLength = file.length();
+
+        final String boundary = generateBoundary();
+        setContentType("multipart/form-data; boundary=" + boundary);
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(metadata.length + 512);
+        writeAscii(buffer, "--" + boundary);
+        buffer.write(CRLF, 0, 2);
+        writeAscii(buffer, "Content-Disposition: form-data; name=\"metadata\"");
+        buffer.write(CRLF, 0, 2);
+        writeAscii(buffer, "Content-Type: application/json; charset=UTF-8");
+        buffer.write(CRLF, 0, 2);
+        buffer.write(CRLF, 0, 2);
+        buffer.write(metadata, 0, metadata.length);
+        buffer.write(CRLF, 0, 2);
+        writeAscii(buffer, "--" + boundary);
+        buffer.write(CRLF, 0, 2);
+
+        final byte[] disposition = ("Content-Disposition: form-data; name=\"file\"; filename=\"" + escape(file.getName()) + "\"").getBytes(StandardCharsets.UTF_8);
+        buffer.write(disposition, 0, disposition.length);
+        buffer.write(CRLF, 0, 2);
+        writeAscii(buffer, "Content-Type: application/octet-stream");
+        buffer.write(CRLF, 0, 2);
+        buffer.write(CRLF, 0, 2);
+        this.head = buffer.toByteArray();
+
+        buffer.reset();
+        buffer.write(CRLF, 0, 2);
+        writeAscii(buffer, "--" + boundary + "--");
+        buffer.write(CRLF, 0, 2);
+        this.tail = buffer.toByteArray();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return head.length + fileLength + tail.length;
+    }
+
+    /**
+     * The same bytes {@link #writeTo(OutputStream)} writes. The file is streamed from disk, and bandwidth limits are not applied
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        return new SequenceInputStream(new ByteArrayInputStream(head), new SequenceInputStream(new FileInputStream(file), new ByteArrayInputStream(tail)));
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        throttle(head.length);
+        out.write(head);
+        long written = head.length;
+        report(written);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() != fileLength) {
+                throw new IOException("File " + file.getName() + " changed while it was being uploaded");
+            }
+
+            final WritableByteChannel target = Channels.newChannel(out);
+            long position = 0;
+
+            while (position < fileLength) {
+                final int chunk = (int) Math.min(CHUNK_SIZE, fileLength - position);
+                throttle(chunk);
+                final long transferred = channel.transferTo(position, chunk, target);
+
+                if (transferred <= 0 && position >= channel.size()) {
+                    throw new IOException("File " + file.getName() + " changed while it was being uploaded");
+                }
+
+                position += transferred;
+                written += transferred;
+                report(written);
+            }
+        }
+
+        throttle(tail.length);
+        out.write(tail);
+        out.flush();
+        writtenAt = System.nanoTime();
+        report(written + tail.length);
+    }
+
+    /**
+     * The {@link System#nanoTime()} at which the whole body was last written, or {@link #NOT_WRITTEN} if it was never written completely
+     */
+    public long getWrittenAt() {
+        return writtenAt;
+    }
+
+    private void throttle(int bytes) throws IOException {
+        for (BandwidthLimiter limiter : limiters) {
+            limiter.acquire(bytes);
+        }
+    }
+
+    private void report(long written) {
+        if (progress != null) progress.onProgress(written, getContentLength());
+    }
+
+    /**
+     * Receives the number of bytes written while the entity is being sent
+     */
+    @FunctionalInterface
+    public interface ProgressCallback {
+        void onProgress(long bytesWritten, long totalBytes);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    private static String generateBoundary() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final StringBuilder builder = new StringBuilder("CurseUpload4J");
+
+        for (int i = 0; i < 30; i++) {
+            builder.append(BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)]);
+        }
+
+        return builder.toString();
+    }
+
+    private static String escape(String fileName) {
+        return fileName.replace("\r", "").replace("\n", "").replace("\"", "%22");
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+    }
+}
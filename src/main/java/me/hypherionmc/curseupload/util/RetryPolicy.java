@@ -0,0 +1,204 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.util;
+
+import me.hypherionmc.curseupload.errors.CurseUploadException;
+import me.hypherionmc.curseupload.listeners.RetryListener;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author HypherionSA
+ * Decides if, and when a failed upload is attempted again.
+ * <p>
+ * A policy can be changed while uploads are using it. Changes are visible to every upload right away, and the
+ * retryable statuses are replaced as a whole, never modified in place.
+ * <p>
+ * When a network error happens after the file was sent, the upload may still have succeeded on CurseForge. Retrying it
+ * then creates a duplicate file, and the {@link UploadJournal} can't prevent that, since the file ID of the first attempt
+ * is never received. So by default, network errors are only retried when they happened before the whole request was
+ * sent. See {@link #retrySentRequests(boolean)}
+ */
+public class RetryPolicy {
+
+    // Statuses that are retried by default. Rate limits and temporary server errors
+    public static final Set<Integer> DEFAULT_RETRYABLE_STATUSES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(408, 429, 500, 502, 503, 504)));
+
+    private volatile int maxAttempts = 3;
+    private volatile long initialDelayMillis = 1000;
+    private volatile long maxDelayMillis = 60_000;
+    private volatile double multiplier = 2.0;
+    private volatile double jitter = 0.5;
+    private volatile boolean retryConnectionErrors = true;
+    private volatile boolean retrySentRequests = false;
+    // Never modified, only replaced
+    private volatile Set<Integer> retryableStatuses = DEFAULT_RETRYABLE_STATUSES;
+    private volatile @Nullable RetryListener listener;
+
+    /**
+     * A policy that retries up to 3 times, with exponential backoff starting at 1 second
+     */
+    public static RetryPolicy defaults() {
+        return new RetryPolicy();
+    }
+
+    /**
+     * A policy that never retries
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy().maxAttempts(1);
+    }
+
+    /**
+     * The maximum number of attempts, including the first one
+     */
+    public RetryPolicy maxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * The delay before the first retry, and the upper bound of any delay
+     */
+    public RetryPolicy delay(long initialDelayMillis, long maxDelayMillis) {
+        if (initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("Delays must be positive, and the maximum delay may not be smaller than the initial delay");
+        }
+
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * How much the delay grows after every failed attempt
+     */
+    public RetryPolicy multiplier(double multiplier) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier must be at least 1");
+        }
+
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * The fraction of each delay that is randomized, so parallel uploads don't retry in lock-step.
+     * 0 disables jitter, 1 picks any delay between 0 and the computed backoff
+     */
+    public RetryPolicy jitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Replace the HTTP status codes that are retried
+     */
+    public RetryPolicy retryableStatuses(Collection<Integer> statuses) {
+        this.retryableStatuses = Collections.unmodifiableSet(new HashSet<>(statuses));
+        return this;
+    }
+
+    /**
+     * Should timeouts, connection resets and other network errors be retried, when they happened before the whole
+     * request was sent
+     */
+    public RetryPolicy retryConnectionErrors(boolean retry) {
+        this.retryConnectionErrors = retry;
+        return this;
+    }
+
+    /**
+     * Should network errors also be retried after the whole request was sent, like a timeout while waiting for the
+     * response. CurseForge may have accepted the first attempt, so this can create duplicate files. Off by default
+     */
+    public RetryPolicy retrySentRequests(boolean retry) {
+        this.retrySentRequests = retry;
+        return this;
+    }
+
+    /**
+     * Get notified before every retry
+     */
+    public RetryPolicy listener(@Nullable RetryListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public @Nullable RetryListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Check if a failed attempt should be tried again
+     * @param attempt The attempt that failed, starting at 1
+     * @param error Why the attempt failed
+     */
+    public boolean shouldRetry(int attempt, CurseUploadException error) {
+        if (attempt >= maxAttempts) return false;
+
+        // The server asked us to wait longer than we are willing to
+        if (error.getRetryAfterMillis() > maxDelayMillis) return false;
+
+        if (error.getStatusCode() == -1) {
+            if (error.isRequestSent() && !retrySentRequests) return false;
+            return retryConnectionErrors && error.getCause() instanceof IOException;
+        }
+
+        return retryableStatuses.contains(error.getStatusCode());
+    }
+
+    /**
+     * Calculate how long to wait before the next attempt. A Retry-After header sent by the server
+     * is always honoured
+     * @param attempt The attempt that failed, starting at 1
+     * @param error Why the attempt failed
+     */
+    public long delayMillis(int attempt, CurseUploadException error) {
+        double backoff = initialDelayMillis * Math.pow(multiplier, attempt - 1);
+        backoff = Math.min(backoff, maxDelayMillis);
+        backoff -= backoff * jitter * ThreadLocalRandom.current().nextDouble();
+
+        return Math.max((long) backoff, error.getRetryAfterMillis());
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author HypherionSA
+ * A local record of files that were already uploaded, keyed by project and the SHA-256 hash of the file.
+ * When a release is run again after a partial failure, files found in the journal are not uploaded a second time,
+ * and their recorded IDs are used as the parent of any additional files that still need to be uploaded.
+ * <p>
+ * The journal is an append-only text file. It is locked while it is read or written, so it can be shared by
+ * several threads and several JVMs on the same machine. Before a file is uploaded, it is {@link #claim claimed}.
+ * A claim holds a lock on a range of a lock file next to the journal until the upload is recorded or released,
+ * so two uploads of the same file never run at the same time. The second one waits, and is skipped once the first
+ * one is recorded. The operating system releases the lock when a JVM dies, so a killed job never blocks a re-run
+ */
+public class UploadJournal {
+
+    // Files are hashed through memory-mapped windows of this size
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // Number of byte ranges of the lock file claims are spread over. Files sharing a range are uploaded one after another
+    private static final int CLAIM_SLOTS = 1 << 20;
+
+    // File locks are held by the whole JVM, so threads of the same JVM also need to be kept apart.
+    // The parsed journal is shared the same way, so every journal file is only read once per JVM
+    private static final ConcurrentHashMap<String, State> STATES = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final File lockFile;
+    private final State state;
+
+    /**
+     * @param file The journal file. It is created, together with a .lock file next to it, when the first upload is claimed
+     */
+    public UploadJournal(File file) {
+        this.file = file.getAbsoluteFile();
+        this.lockFile = new File(this.file.getPath() + ".lock");
+        this.state = STATES.computeIfAbsent(this.file.getPath(), k -> new State());
+    }
+
+    /**
+     * Find the ID of a file that was already uploaded
+     * @param projectId The project the file belongs to
+     * @param parentFileId The ID of the main file, or 0 if this is a main file
+     * @param hash The {@link #hash(File) hash} of the file
+     * @return The recorded file ID, or 0 if the file was not uploaded before
+     */
+    public long find(long projectId, long parentFileId, String hash) throws IOException {
+        return find(key(projectId, parentFileId, hash));
+    }
+
+    private long find(String key) throws IOException {
+        if (!file.exists()) return 0;
+
+        synchronized (state) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                 FileLock ignored = channel.lock(0, Long.MAX_VALUE, true)) {
+                state.update(channel);
+            }
+
+            return state.entries.getOrDefault(key, 0L);
+        }
+    }
+
+    /**
+     * Find a file that was already uploaded, or claim it for uploading. While another thread or JVM holds a claim
+     * on the same file, this waits until it is recorded or released, or until that JVM exits.
+     * A claim that was not already uploaded must be {@link #record(Claim, long) recorded} or {@link #release(Claim) released}
+     * by the thread that uploads the file
+     * @param projectId The project the file belongs to
+     * @param parentFileId The ID of the main file, or 0 if this is a main file
+     * @param hash The {@link #hash(File) hash} of the file
+     * @throws InterruptedIOException When the thread is interrupted while waiting for another claim
+     */
+    public Claim claim(long projectId, long parentFileId, String hash) throws IOException {
+        final String key = key(projectId, parentFileId, hash);
+        final long slot = (key.hashCode() & 0x7fffffff) % CLAIM_SLOTS;
+        final Semaphore local = state.slots.computeIfAbsent(slot, k -> new Semaphore(1));
+
+        try {
+            local.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for another upload of the same file");
+        }
+
+        FileChannel channel = null;
+        final Claim claim;
+        try {
+            createDirectories();
+            channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+            // Waits while another JVM is uploading the same file. The lock is released when the channel is closed
+            channel.lock(slot, 1, false);
+            claim = new Claim(key, find(key), local, channel);
+        } catch (Throwable e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+
+            local.release();
+            throw e;
+        }
+
+        if (claim.isUploaded()) unlock(claim);
+        return claim;
+    }
+
+    /**
+     * Record a successful upload of a claimed file, and release the claim
+     * @param fileId The ID CurseForge assigned to the file
+     */
+    public void record(Claim claim, long fileId) throws IOException {
+        try {
+            write(claim.key + fileId);
+        } finally {
+            unlock(claim);
+        }
+    }
+
+    /**
+     * Give up a claim, because the upload failed. The next claim for the same file can upload it right away
+     */
+    public void release(Claim claim) throws IOException {
+        unlock(claim);
+    }
+
+    /**
+     * Record a successful upload
+     * @param projectId The project the file belongs to
+     * @param parentFileId The ID of the main file, or 0 if this is a main file
+     * @param hash The {@link #hash(File) hash} of the file
+     * @param fileId The ID CurseForge assigned to the file
+     */
+    public void record(long projectId, long parentFileId, String hash, long fileId) throws IOException {
+        write(key(projectId, parentFileId, hash) + fileId);
+    }
+
+    private void write(String line) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        createDirectories();
+
+        synchronized (state) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                state.update(channel);
+
+                long position = channel.size();
+                while (bytes.hasRemaining()) {
+                    position += channel.write(bytes, position);
+                }
+
+                channel.force(false);
+                state.update(channel);
+            }
+        }
+    }
+
+    private void unlock(Claim claim) throws IOException {
+        if (claim.released.getAndSet(true)) return;
+
+        try {
+            claim.channel.close();
+        } finally {
+            claim.local.release();
+        }
+    }
+
+    private void createDirectories() throws IOException {
+        final File parent = file.getParentFile();
+        if (parent != null) Files.createDirectories(parent.toPath());
+    }
+
+    /**
+     * The result of {@link #claim}. Either a file that was already uploaded, or permission to upload it
+     */
+    public static final class Claim {
+        private final String key;
+        private final long fileId;
+
+        // Held until the claim is recorded or released
+        private final Semaphore local;
+        private final FileChannel channel;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Claim(String key, long fileId, Semaphore local, FileChannel channel) {
+            this.key = key;
+            this.fileId = fileId;
+            this.local = local;
+            this.channel = channel;
+        }
+
+        /**
+         * Check if the file was uploaded before, in which case it must not be uploaded again
+         */
+        public boolean isUploaded() {
+            return fileId != 0;
+        }
+
+        /**
+         * The recorded ID of the file, or 0 if it still needs to be uploaded
+         */
+        public long getFileId() {
+            return fileId;
+        }
+    }
+
+    /**
+     * The parsed journal of a single file. Since the journal is only appended to, only the lines written since the
+     * last update are read. Guarded by its own monitor, and by the file lock
+     */
+    private static final class State {
+        private final Map<String, Long> entries = new HashMap<>();
+
+        // Claims of this JVM, by lock file range
+        private final ConcurrentHashMap<Long, Semaphore> slots = new ConcurrentHashMap<>();
+
+        // Number of bytes of complete lines that were parsed
+        private long parsed = 0;
+
+        private void update(FileChannel channel) throws IOException {
+            final long size = channel.size();
+            if (size == parsed) return;
+
+            // Replaced by a shorter file, start over
+            if (size < parsed) {
+                entries.clear();
+                parsed = 0;
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int) (size - parsed));
+            long position = parsed;
+            int read;
+            while (buffer.hasRemaining() && (read = channel.read(buffer, position)) >= 0) {
+                position += read;
+            }
+
+            // Only complete lines count. A JVM that crashed while writing could have left half a line behind
+            final byte[] bytes = buffer.array();
+            int end = buffer.position();
+            while (end > 0 && bytes[end - 1] != '\n') end--;
+
+            for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+                parse(line);
+            }
+
+            parsed += end;
+        }
+
+        // Later lines win, in case a file was uploaded again on purpose
+        private void parse(String line) {
+            final String[] parts = line.trim().split(" ");
+            if (parts.length != 4) return;
+
+            try {
+                entries.put(parts[0] + " " + parts[1] + " " + parts[2] + " ", Long.parseLong(parts[3]));
+            } catch (NumberFormatException ignored) {}
+        }
+    }
+
+    /**
+     * Calculate the SHA-256 hash of a file, reading it through memory-mapped windows
+     * @return The hash as a lowercase hex string
+     */
+    public static String hash(File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                digest.update(window);
+            }
+        }
+
+        final byte[] hash = digest.digest();
+        final char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+
+        return new String(hex);
+    }
+
+    private static String key(long projectId, long parentFileId, String hash) {
+        return projectId + " " + parentFileId + " " + hash + " ";
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.TLongSet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * @author HypherionSA
+ * Streaming parser for the CurseForge version-types and versions feeds.
+ * Only the fields that are needed are read, and version groups of unwanted types are skipped without being parsed
+ */
+public class VersionFeedParser {
+
+    /**
+     * Receives every version of a wanted type
+     */
+    @FunctionalInterface
+    public interface VersionConsumer {
+        void accept(String name, String slug, long id);
+    }
+
+    /**
+     * Read the version-types feed, and collect the IDs of the wanted types
+     * @param reader The version-types JSON
+     * @param filter Decides which type slugs are wanted
+     * @return The IDs of the wanted types
+     */
+    public static long[] parseTypes(Reader reader, Predicate<String> filter) throws IOException {
+        final TLongArrayList ids = new TLongArrayList();
+        final JsonReader json = new JsonReader(reader);
+
+        json.beginArray();
+        while (json.hasNext()) {
+            long id = 0;
+            String slug = null;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "id": id = json.nextLong(); break;
+                    case "slug": slug = nextString(json); break;
+                    default: json.skipValue(); break;
+                }
+            }
+            json.endObject();
+
+            if (slug != null && filter.test(slug)) {
+                ids.add(id);
+            }
+        }
+        json.endArray();
+
+        return ids.toArray();
+    }
+
+    /**
+     * Read the versions feed, and pass the versions of the wanted types to the consumer
+     * @param reader The versions JSON
+     * @param validTypes The IDs of the wanted version types
+     * @param consumer Receives the wanted versions
+     */
+    public static void parseVersions(Reader reader, TLongSet validTypes, VersionConsumer consumer) throws IOException {
+        final JsonReader json = new JsonReader(reader);
+
+        json.beginArray();
+        while (json.hasNext()) {
+            long type = -1;
+
+            // Only used when the versions of a group appear before its type
+            List<PendingVersion> pending = null;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "type":
+                        type = json.nextLong();
+                        break;
+                    case "versions":
+                        if (type == -1) {
+                            final List<PendingVersion> buffer = new ArrayList<>();
+                            readVersions(json, (name, slug, id) -> buffer.add(new PendingVersion(name, slug, id)));
+                            pending = buffer;
+                        } else if (validTypes.contains(type)) {
+                            readVersions(json, consumer);
+                        } else {
+                            json.skipValue();
+                        }
+                        break;
+                    default:
+                        json.skipValue();
+                        break;
+                }
+            }
+            json.endObject();
+
+            if (pending != null && validTypes.contains(type)) {
+                for (PendingVersion version : pending) {
+                    consumer.accept(version.name, version.slug, version.id);
+                }
+            }
+        }
+        json.endArray();
+    }
+
+    private static void readVersions(JsonReader json, VersionConsumer consumer) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return;
+        }
+
+        json.beginArray();
+        while (json.hasNext()) {
+            long id = 0;
+            String name = null;
+            String slug = null;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "id": id = json.nextLong(); break;
+                    case "name": name = nextString(json); break;
+                    case "slug": slug = nextString(json); break;
+                    default: json.skipValue(); break;
+                }
+            }
+            json.endObject();
+
+            if (name != null) {
+                consumer.accept(name, slug == null ? "" : slug, id);
+            }
+        }
+        json.endArray();
+    }
+
+    private static final class PendingVersion {
+        private final String name;
+        private final String slug;
+        private final long id;
+
+        private PendingVersion(String name, String slug, long id) {
+            this.name = name;
+            this.slug = slug;
+            this.id = id;
+        }
+    }
+
+    private static String nextString(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+
+        return json.nextString();
+    }
+}
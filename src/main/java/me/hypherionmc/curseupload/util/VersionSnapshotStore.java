@@ -0,0 +1,110 @@
+/*
+ * This file is part of CurseUpload4J, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 HypherionSA and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package me.hypherionmc.curseupload.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import me.hypherionmc.curseupload.constants.GameType;
+import me.hypherionmc.curseupload.schema.versions.VersionSnapshot;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * @author HypherionSA
+ * Stores a {@link VersionSnapshot} per {@link GameType} on disk, so new processes don't have to download
+ * the full version lists before they can upload anything
+ */
+public class VersionSnapshotStore {
+
+    private static final Gson gson = new Gson();
+
+    private final File directory;
+
+    /**
+     * @param directory The folder the snapshots are stored in. It is created when the first snapshot is saved
+     */
+    public VersionSnapshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * The default location, in the .curseupload4j folder of the user's home directory
+     */
+    public static VersionSnapshotStore defaultStore() {
+        return new VersionSnapshotStore(new File(System.getProperty("user.home"), ".curseupload4j" + File.separator + "versions"));
+    }
+
+    /**
+     * Load the last saved snapshot of a game
+     * @return The snapshot, or null if there is none, or it could not be read
+     */
+    public @Nullable VersionSnapshot load(GameType gameType) {
+        final File file = file(gameType);
+        if (!file.isFile()) return null;
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, VersionSnapshot.class);
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save a snapshot of a game. The file is replaced in one step, so other processes never read half a snapshot
+     */
+    public void save(GameType gameType, VersionSnapshot snapshot) throws IOException {
+        Files.createDirectories(directory.toPath());
+
+        final Path target = file(gameType).toPath();
+        final Path temp = Files.createTempFile(directory.toPath(), target.getFileName().toString(), ".tmp");
+
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                gson.toJson(snapshot, writer);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private File file(GameType gameType) {
+        return new File(directory, gameType.name().toLowerCase(Locale.ROOT) + ".json");
+    }
+}
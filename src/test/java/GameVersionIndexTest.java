@@ -0,0 +1,49 @@
+import me.hypherionmc.curseupload.constants.GameType;
+import me.hypherionmc.curseupload.requests.GameVersionIndex;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Checks how the game version index resolves names, slugs and patterns. Throws when a check fails
+ */
+public class GameVersionIndexTest {
+
+    public static void main(String[] args) {
+        final GameVersionIndex.Builder builder = GameVersionIndex.builder(GameType.MINECRAFT);
+        for (int patch = 0; patch <= 6; patch++) {
+            final String name = patch == 0 ? "1.20" : "1.20." + patch;
+            builder.add(name, 100 + patch).addSlug(name.replace('.', '-'), 100 + patch);
+        }
+        builder.add("1.19.4", 90).add("Forge", 1).add("Fabric", 2).add("Client", 3);
+        final GameVersionIndex index = builder.build();
+
+        // A pattern fills the array, exact names after it still need room
+        check(resolve(index, "1.20.x", "forge", "fabric", "client"), 100, 101, 102, 103, 104, 105, 106, 1, 2, 3);
+        check(resolve(index, "forge", "1.20.x", "fabric", "client"), 1, 100, 101, 102, 103, 104, 105, 106, 2, 3);
+
+        // Duplicates from different spellings and overlapping patterns are only included once
+        check(resolve(index, "1.20.1", "1-20-1", "1.20.1-1.20.2", "FORGE", "forge"), 101, 102, 1);
+        check(resolve(index, "1.19.4-1.20.1"), 90, 100, 101);
+
+        if (index.resolve(Arrays.asList("forge", "1.21.x")) != null) {
+            throw new AssertionError("1.21.x should not resolve");
+        }
+
+        System.out.println("All game version index checks passed");
+    }
+
+    private static long[] resolve(GameVersionIndex index, String... versions) {
+        final Set<String> set = new LinkedHashSet<>(Arrays.asList(versions));
+        final long[] ids = index.resolve(set);
+        if (ids == null) throw new AssertionError(set + " did not resolve");
+        return ids;
+    }
+
+    private static void check(long[] actual, long... expected) {
+        if (!Arrays.equals(actual, expected)) {
+            throw new AssertionError("Expected " + Arrays.toString(expected) + " but got " + Arrays.toString(actual));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import me.hypherionmc.curseupload.util.MultipartFileEntity;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Compares the throughput and allocation rate of {@link MultipartFileEntity} with the httpmime multipart body.
+ * Usage: MultipartEntityBenchmark [size in MB]
+ */
+public class MultipartEntityBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        final int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        final File file = File.createTempFile("curseupload", ".zip");
+        file.deleteOnExit();
+
+        final byte[] chunk = new byte[1024 * 1024];
+        new Random(42).nextBytes(chunk);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < sizeMb; i++) out.write(chunk);
+        }
+
+        final String metadata = "{\"changelog\":\"Benchmark\",\"changelogType\":\"text\",\"gameVersions\":[9990],\"releaseType\":\"release\"}";
+
+        for (int round = 0; round < ROUNDS; round++) {
+            final MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+            builder.addTextBody("metadata", metadata, ContentType.APPLICATION_JSON);
+            builder.addBinaryBody("file", file);
+            measure("httpmime", builder.build());
+
+            measure("MultipartFileEntity", new MultipartFileEntity(metadata.getBytes(StandardCharsets.UTF_8), file));
+        }
+    }
+
+    private static void measure(String name, HttpEntity entity) throws Exception {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final CountingOutputStream out = new CountingOutputStream();
+
+        final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        entity.writeTo(out);
+        final long nanos = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        final double mbPerSecond = (out.count / (1024.0 * 1024.0)) / (nanos / 1_000_000_000.0);
+        System.out.printf("%-20s %8.1f MB/s, %10d bytes allocated (%d bytes written)%n", name, mbPerSecond, allocated, out.count);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
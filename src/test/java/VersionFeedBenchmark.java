@@ -0,0 +1,87 @@
+import com.google.gson.Gson;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import me.hypherionmc.curseupload.schema.versions.Version;
+import me.hypherionmc.curseupload.util.VersionFeedParser;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the parse time and allocations of the streaming versions parser with Gson reflection.
+ * Usage: VersionFeedBenchmark [versions.json]. Without a file, a synthetic feed the size of the Minecraft feed is used
+ */
+public class VersionFeedBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        final String feed = args.length > 0
+                ? new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8)
+                : syntheticFeed();
+
+        // Roughly the share of version types that is kept for Minecraft
+        final TLongSet validTypes = new TLongHashSet(new long[] { 1, 2, 3, 4, 5 });
+
+        for (int round = 0; round < ROUNDS; round++) {
+            measure("Gson reflection", () -> {
+                final Map<String, Long> versions = new HashMap<>();
+                for (Version version : new Gson().fromJson(new StringReader(feed), Version[].class)) {
+                    if (!validTypes.contains(version.type())) continue;
+                    version.versions().forEach(data -> versions.put(data.name().toLowerCase(), data.id()));
+                }
+                return versions.size();
+            });
+
+            measure("Streaming parser", () -> {
+                final Map<String, Long> versions = new HashMap<>();
+                VersionFeedParser.parseVersions(new StringReader(feed), validTypes, (name, slug, id) -> versions.put(name.toLowerCase(), id));
+                return versions.size();
+            });
+        }
+    }
+
+    private static String syntheticFeed() {
+        final StringBuilder builder = new StringBuilder("[");
+        long id = 1;
+
+        for (int type = 1; type <= 80; type++) {
+            if (type > 1) builder.append(',');
+            builder.append("{\"type\":").append(type).append(",\"versions\":[");
+
+            for (int i = 0; i < 150; i++, id++) {
+                if (i > 0) builder.append(',');
+                builder.append("{\"id\":").append(id)
+                        .append(",\"gameVersionTypeID\":").append(type)
+                        .append(",\"name\":\"1.").append(type).append('.').append(i)
+                        .append("\",\"slug\":\"1-").append(type).append('-').append(i).append("\"}");
+            }
+
+            builder.append("]}");
+        }
+
+        return builder.append(']').toString();
+    }
+
+    private static void measure(String name, ParseTask task) throws Exception {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        final int count = task.run();
+        final long nanos = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-18s %8.2f ms, %12d bytes allocated (%d versions kept)%n", name, nanos / 1_000_000.0, allocated, count);
+    }
+
+    private interface ParseTask {
+        int run() throws Exception;
+    }
+}